@@ -0,0 +1,166 @@
+package Team4450.Robot11;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares a JMH CSV result file (-rf csv) with the baseline file and flags
+ * regressions in loop cost: average time more than the time tolerance percent
+ * over the baseline, or allocation (gc.alloc.rate.norm from -prof gc) more than
+ * the allocation tolerance bytes over it. Exits with status 1 if anything
+ * regressed so ant check fails.
+ *
+ *   BenchmarkCheck baseline.csv results.csv [time tolerance %] [alloc tolerance bytes]
+ *
+ * Results missing from the baseline are listed as new. With an empty baseline
+ * everything is new, nothing is compared and a warning says so, the check is
+ * skipped rather than failed. Lines starting with # are comments. Baselines are
+ * only comparable when made on the same machine.
+ */
+
+public class BenchmarkCheck
+{
+	private static final String	ALLOCATION = "gc.alloc.rate.norm";
+
+	public static void main(String[] args) throws IOException
+	{
+		Map<String, Double>	baseline, results;
+		double				timeTolerance = args.length > 2 ? Double.parseDouble(args[2]) : 20;
+		double				allocTolerance = args.length > 3 ? Double.parseDouble(args[3]) : 16;
+		double				base, score;
+		boolean				allocation, regressed;
+		int					regressions = 0;
+
+		if (args.length < 2)
+		{
+			System.err.println("usage: BenchmarkCheck baseline.csv results.csv [time tolerance %] [alloc tolerance bytes]");
+			System.exit(2);
+		}
+
+		baseline = read(args[0]);
+		results = read(args[1]);
+
+		for (Map.Entry<String, Double> result : results.entrySet())
+		{
+			score = result.getValue();
+			allocation = result.getKey().contains(ALLOCATION);
+
+			if (!baseline.containsKey(result.getKey()))
+			{
+				System.out.println(String.format("new        %-80s %12.1f", result.getKey(), score));
+				continue;
+			}
+
+			base = baseline.get(result.getKey());
+
+			if (allocation)
+				regressed = score > base + allocTolerance;
+			else
+				regressed = score > base * (1 + timeTolerance / 100);
+
+			if (regressed) regressions++;
+
+			System.out.println(String.format("%-10s %-80s %12.1f %12.1f %+7.1f%%", regressed ? "REGRESSED" : "ok",
+					result.getKey(), base, score, base == 0 ? 0 : (score - base) * 100 / base));
+		}
+
+		if (baseline.isEmpty())
+		{
+			System.out.println("WARNING: baseline " + args[0] + " is empty, nothing was compared. Run ant baseline " +
+					"on the reference machine and commit it.");
+			return;
+		}
+
+		System.out.println(regressions + " regressions");
+
+		if (regressions > 0) System.exit(1);
+	}
+
+	// Read the time (ns/op) and allocation (B/op) scores from a JMH CSV file,
+	// keyed by benchmark name, metric and parameters.
+
+	private static Map<String, Double> read(String fileName) throws IOException
+	{
+		Map<String, Double>	scores = new LinkedHashMap<String, Double>();
+		BufferedReader		reader = new BufferedReader(new FileReader(fileName));
+		String				line;
+		String[]			header = null, fields;
+		StringBuilder		key = new StringBuilder();
+
+		try
+		{
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.trim().isEmpty() || line.startsWith("#")) continue;
+
+				fields = split(line);
+
+				if (header == null)
+				{
+					header = fields;
+					continue;
+				}
+
+				if (fields.length < 7 || !(fields[6].equals("ns/op") || fields[6].equals("B/op"))) continue;
+
+				// Time is only tracked for the primary result, allocation for the gc one.
+
+				if (fields[0].contains(":") && !fields[0].contains(ALLOCATION)) continue;
+
+				// Allocation rows are named benchmark:<dot>gc.alloc.rate.norm, drop the
+				// separator which may not survive the file's character set.
+
+				key.setLength(0);
+
+				if (fields[0].contains(":"))
+					key.append(fields[0].substring(0, fields[0].indexOf(':'))).append(':').append(ALLOCATION);
+				else
+					key.append(fields[0]);
+
+				for (int i = 7; i < fields.length && i < header.length; i++)
+					key.append(' ').append(header[i].replace("Param: ", "")).append('=').append(fields[i]);
+
+				scores.put(key.toString(), Double.parseDouble(fields[4].replace(',', '.')));
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		return scores;
+	}
+
+	// Split a CSV line, quoted fields may contain commas.
+
+	private static String[] split(String line)
+	{
+		ArrayList<String>	fields = new ArrayList<String>();
+		StringBuilder		field = new StringBuilder();
+		boolean				quoted = false;
+		char				c;
+
+		for (int i = 0; i < line.length(); i++)
+		{
+			c = line.charAt(i);
+
+			if (c == '"')
+				quoted = !quoted;
+			else if (c == ',' && !quoted)
+			{
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else
+				field.append(c);
+		}
+
+		fields.add(field.toString());
+
+		return fields.toArray(new String[fields.size()]);
+	}
+}
@@ -0,0 +1,104 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares per tick stick shaping cost of the old Teleop.stickLogCorrection()
+ * math with the InputShaper lookup table pipeline. Each operation shapes the
+ * four drive stick axes, as one teleop tick does.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InputShapingBenchmark
+{
+	private static final int	SAMPLES = 1024;
+
+	private final double[]		samples = new double[SAMPLES];
+	private int					next;
+
+	private InputShaper			rightY, leftY, rightX, leftX;
+	private InputShaper			fullRightY, fullLeftY, fullRightX, fullLeftX;
+
+	@Setup
+	public void setup()
+	{
+		Random		random = new Random(4450);
+		Properties	properties = new Properties();
+
+		for (int i = 0; i < SAMPLES; i++) samples[i] = random.nextDouble() * 2 - 1;
+
+		// Default pipeline, same curve as the old code.
+
+		rightY = InputShaper.fromProperties(properties, "DriveStick", .020);
+		leftY = InputShaper.fromProperties(properties, "DriveStick", .020);
+		rightX = InputShaper.fromProperties(properties, "DriveStick", .020);
+		leftX = InputShaper.fromProperties(properties, "DriveStick", .020);
+
+		// Every stage turned on.
+
+		properties.setProperty("DriveStickDeadband", ".05");
+		properties.setProperty("DriveStickCurve", "expo");
+		properties.setProperty("DriveStickSlewRate", "4");
+		properties.setProperty("DriveStickScale", ".9");
+
+		fullRightY = InputShaper.fromProperties(properties, "DriveStick", .020);
+		fullLeftY = InputShaper.fromProperties(properties, "DriveStick", .020);
+		fullRightX = InputShaper.fromProperties(properties, "DriveStick", .020);
+		fullLeftX = InputShaper.fromProperties(properties, "DriveStick", .020);
+	}
+
+	private double sample()
+	{
+		next = (next + 1) & (SAMPLES - 1);
+
+		return samples[next];
+	}
+
+	@Benchmark
+	public double stickLogCorrection()
+	{
+		return stickLogCorrection(sample()) + stickLogCorrection(sample()) + stickLogCorrection(sample()) +
+				stickLogCorrection(sample());
+	}
+
+	@Benchmark
+	public double shaperLogCurve()
+	{
+		return rightY.apply(sample()) + leftY.apply(sample()) + rightX.apply(sample()) + leftX.apply(sample());
+	}
+
+	@Benchmark
+	public double shaperAllStages()
+	{
+		return fullRightY.apply(sample()) + fullLeftY.apply(sample()) + fullRightX.apply(sample()) +
+				fullLeftX.apply(sample());
+	}
+
+	// The Teleop stick shaping code replaced by InputShaper, kept as the baseline.
+
+	private static double baseLog(double base, double value)
+	{
+		return Math.log(value) / Math.log(base);
+	}
+
+	private static double stickLogCorrection(double joystickValue)
+	{
+		double base = Math.pow(2, 1/3) + Math.pow(2, 1/3);
+
+		if (joystickValue > 0)
+			joystickValue = baseLog(base, joystickValue + 1);
+		else if (joystickValue < 0)
+			joystickValue = -baseLog(base, -joystickValue + 1);
+
+		return joystickValue;
+	}
+}
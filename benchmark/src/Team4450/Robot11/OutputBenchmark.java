@@ -0,0 +1,98 @@
+package Team4450.Robot11;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import Team4450.Lib.LCD;
+
+/**
+ * Cost of the driver output paths on stub devices: Talon status formatting
+ * (Devices.GetCANTalonStatus()), LCD lines through LCDLine with the text changed
+ * and unchanged, the old LCD.printLine() format string path for comparison, and
+ * a Telemetry set and flush of changed values. The LCD and SmartDashboard stand
+ * ins in benchmark/stubs do not send anything, so this is our side of the cost.
+ *
+ * Run with -prof gc for bytes allocated per op (gc.alloc.rate.norm).
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OutputBenchmark
+{
+	private static final int	SAMPLES = 1024;
+
+	private final double[]		samples = new double[SAMPLES];
+	private int					next;
+
+	private final TalonStatusSampler.Snapshot	talonStatus = new TalonStatusSampler.Snapshot();
+	private final LCDLine		lcdLine = new LCDLine(4, 60, 0);
+	private final int			key1 = Telemetry.addNumber("Benchmark1", .5);
+	private final int			key2 = Telemetry.addNumber("Benchmark2", .5);
+	private final int			key3 = Telemetry.addNumber("Benchmark3", .5);
+
+	@Setup
+	public void setup()
+	{
+		Random	random = new Random(4450);
+
+		StubDevices.install();
+
+		for (int i = 0; i < SAMPLES; i++) samples[i] = random.nextDouble() * 2 - 1;
+	}
+
+	private double sample()
+	{
+		next = (next + 1) & (SAMPLES - 1);
+
+		return samples[next];
+	}
+
+	@Benchmark
+	public String canTalonStatus()
+	{
+		for (int i = 0; i < TalonStatusSampler.TALON_COUNT; i++)
+		{
+			talonStatus.voltage[i] = sample() * 12;
+			talonStatus.current[i] = sample() * 40;
+		}
+
+		return TalonStatusSampler.format(talonStatus);
+	}
+
+	@Benchmark
+	public void lcdLineChanged()
+	{
+		lcdLine.begin().add("leftY=").add(sample(), 4).add("  rightY=").add(sample(), 4).add("  utilX=")
+			.add(sample(), 4).print();
+	}
+
+	@Benchmark
+	public void lcdLineUnchanged()
+	{
+		lcdLine.begin().add("leftY=").add(.5, 4).add("  rightY=").add(.5, 4).add("  utilX=").add(0, 4).print();
+	}
+
+	// The LCD line as Teleop printed it before LCDLine.
+
+	@Benchmark
+	public void lcdPrintLine()
+	{
+		LCD.printLine(4, "leftY=%.4f  rightY=%.4f  utilX=%.4f", sample(), sample(), sample());
+	}
+
+	@Benchmark
+	public void telemetryFlush()
+	{
+		Telemetry.setNumber(key1, sample() * 100);
+		Telemetry.setNumber(key2, sample() * 100);
+		Telemetry.setNumber(key3, sample() * 100);
+
+		Telemetry.flushNow();
+	}
+}
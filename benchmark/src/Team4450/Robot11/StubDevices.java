@@ -0,0 +1,52 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+
+/**
+ * Installs hardware for benchmarks run off the robot: the simulator's drive
+ * train, NavX and pneumatics as the Hardware backends (not stepped, so they
+ * hold still) and a clock on System.nanoTime(). Flight recorder files go to the
+ * temp directory. Benchmarks of code that sends to the dashboard or LCD rely on
+ * the stand ins in benchmark/stubs.
+ */
+
+class StubDevices
+{
+	private static Properties	properties;
+
+	// Install the stub devices once per JVM and return the default properties.
+
+	static synchronized Properties install()
+	{
+		DrivetrainSim	drivetrain;
+
+		if (properties != null) return properties;
+
+		properties = new Properties();
+		properties.setProperty("FlightRecorderDirectory", System.getProperty("java.io.tmpdir") + "/robot11-benchmark");
+
+		drivetrain = new DrivetrainSim(properties);
+
+		Hardware.drive = drivetrain;
+		Hardware.navx = new NavXSim(drivetrain, 0);
+		Hardware.pressure = new PneumaticsSim(drivetrain, properties);
+
+		Hardware.clock = new Clock()
+		{
+			public long getTimeUs() { return System.nanoTime() / 1000; }
+
+			public void sleepUs(long us)
+			{
+				try
+				{
+					Thread.sleep(us / 1000, (int) (us % 1000) * 1000);
+				}
+				catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+			}
+		};
+
+		NavXSampler.getInstance().refresh();
+
+		return properties;
+	}
+}
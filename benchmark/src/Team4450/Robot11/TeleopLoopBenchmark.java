@@ -0,0 +1,145 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Cost of the teleop driving loop on stub devices. driveLoopTick() runs the
+ * DriveLoop tick Teleop runs, and the Telemetry flush ControlLoop does after
+ * it, with the sticks read from recorded values instead of the driver station
+ * and an InputService with no devices registered. Flight records go to a ring
+ * file in the temp directory. Mode selects plain tank, alternate mode with the
+ * sticks apart (tank) and alternate mode with the sticks together (NavX
+ * steering assist). The steering assist branch and leftRightEqual() are also
+ * measured alone. The load shedder is never updated, so it stays at level 0
+ * and the best effort work is always measured.
+ *
+ * Run with -prof gc for bytes allocated per op (gc.alloc.rate.norm).
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TeleopLoopBenchmark
+{
+	private static final int	SAMPLES = 1024;
+
+	@Param({"tank", "alt", "assist"})
+	public String				mode;
+
+	private final double[]		leftSamples = new double[SAMPLES], rightSamples = new double[SAMPLES];
+	private final double[]		xSamples = new double[SAMPLES];
+	private int					next;
+	private boolean				altDriveMode;
+
+	private final InputService	inputService = new InputService();
+	private LoadShedder			shedder;
+	private TeleopDrive			teleopDrive;
+	private DriveLoop			driveLoop;
+
+	@Setup
+	public void setup()
+	{
+		Properties		properties = StubDevices.install();
+		Random			random = new Random(4450);
+		LatencyTracer	tracer;
+		int				stickPath;
+		double			stick;
+
+		// Sticks apart for tank, together and over half power (forward) for assist.
+
+		for (int i = 0; i < SAMPLES; i++)
+		{
+			if (mode.equals("assist"))
+			{
+				stick = -.6 - random.nextDouble() * .3;
+				leftSamples[i] = stick + (random.nextDouble() - .5) * .04;
+				rightSamples[i] = stick;
+			}
+			else
+			{
+				leftSamples[i] = random.nextDouble() * 2 - 1;
+				rightSamples[i] = leftSamples[i] > 0 ? leftSamples[i] - .5 : leftSamples[i] + .5;
+			}
+
+			xSamples[i] = random.nextDouble() * .2 - .1;
+		}
+
+		altDriveMode = !mode.equals("tank");
+
+		tracer = new LatencyTracer(false);
+		stickPath = tracer.addPath("Stick", true);
+		tracer.addPath("Trigger", false);
+
+		shedder = new LoadShedder("Benchmark", .020);
+
+		teleopDrive = new TeleopDrive(null, HeadingController.getInstance(properties), tracer);
+
+		// Each tick reads the next recorded sample.
+
+		driveLoop = new DriveLoop(new DriveLoop.Input()
+		{
+			public void poll()
+			{
+				inputService.poll();
+
+				next = (next + 1) & (SAMPLES - 1);
+			}
+
+			public double getLeftY() { return leftSamples[next]; }
+
+			public double getRightY() { return rightSamples[next]; }
+
+			public double getLeftX() { return xSamples[next]; }
+
+			public double getRightX() { return xSamples[next]; }
+
+			public double getUtilityX() { return xSamples[next]; }
+		}, shedder, teleopDrive, tracer, stickPath, properties, .020);
+
+		driveLoop.setAltDriveMode(altDriveMode);
+
+		FlightRecorder.getInstance(properties).open("Benchmark", DriverStation.MatchType.None, 1);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		teleopDrive.stop();
+	}
+
+	@Benchmark
+	public void driveLoopTick()
+	{
+		driveLoop.tick();
+
+		if (shedder.allow(LoadShedder.BEST_EFFORT)) Telemetry.flush();
+	}
+
+	// The drive decision alone on the mode's stick values. With mode assist this
+	// is the steering assist branch.
+
+	@Benchmark
+	public void teleopDrive()
+	{
+		next = (next + 1) & (SAMPLES - 1);
+
+		teleopDrive.drive(leftSamples[next], rightSamples[next], altDriveMode);
+	}
+
+	@Benchmark
+	public boolean leftRightEqual()
+	{
+		next = (next + 1) & (SAMPLES - 1);
+
+		return TeleopDrive.leftRightEqual(leftSamples[next], rightSamples[next], 10);
+	}
+}
@@ -0,0 +1,27 @@
+package Team4450.Lib;
+
+/**
+ * Benchmark stand in for the RobotLib LCD, which sends to the driver station.
+ * Put ahead of RobotLib on the class path when running benchmarks. Formats the
+ * line as RobotLib does but does not send it.
+ */
+
+public class LCD
+{
+	private static volatile String	lastLine;
+
+	public static void printLine(int line, String message, Object... parms)
+	{
+		lastLine = parms.length == 0 ? message : String.format(message, parms);
+	}
+
+	public static void clearLine(int line)
+	{
+		lastLine = null;
+	}
+
+	public static void clearAll()
+	{
+		lastLine = null;
+	}
+}
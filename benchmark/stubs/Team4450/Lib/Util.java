@@ -0,0 +1,24 @@
+package Team4450.Lib;
+
+/**
+ * Benchmark stand in for RobotLib Util logging, which writes the robot log
+ * file. Put ahead of RobotLib on the class path when running benchmarks. Only
+ * the methods used by the benchmarked classes; logs go to stderr.
+ */
+
+public class Util
+{
+	public static void consoleLog()
+	{
+	}
+
+	public static void consoleLog(String message, Object... parms)
+	{
+		System.err.println(String.format(message, parms));
+	}
+
+	public static void logException(Throwable e)
+	{
+		e.printStackTrace();
+	}
+}
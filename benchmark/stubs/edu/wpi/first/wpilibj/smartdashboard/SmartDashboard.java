@@ -0,0 +1,56 @@
+package edu.wpi.first.wpilibj.smartdashboard;
+
+/**
+ * Benchmark stand in for the WPILib SmartDashboard, which needs NetworkTables
+ * native code. Put ahead of the WPILib jars on the class path when running
+ * benchmarks. Puts are only counted and gets return the default, so measured
+ * time and allocation are our own code's, not NetworkTables'.
+ */
+
+public class SmartDashboard
+{
+	private static long		puts;
+
+	public static boolean putNumber(String key, double value)
+	{
+		puts++;
+
+		return true;
+	}
+
+	public static boolean putBoolean(String key, boolean value)
+	{
+		puts++;
+
+		return true;
+	}
+
+	public static boolean putString(String key, String value)
+	{
+		puts++;
+
+		return true;
+	}
+
+	public static double getNumber(String key, double defaultValue)
+	{
+		return defaultValue;
+	}
+
+	public static boolean getBoolean(String key, boolean defaultValue)
+	{
+		return defaultValue;
+	}
+
+	public static String getString(String key, String defaultValue)
+	{
+		return defaultValue;
+	}
+
+	// Number of puts so far.
+
+	public static long getPuts()
+	{
+		return puts;
+	}
+}
@@ -0,0 +1,147 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+
+import Team4450.Lib.Util;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * A fully planned autonomous program variant: the ordered drive steps with all
+ * their motion profiles already generated. Plans are built by AutoPlanner while
+ * the robot is disabled, keyed by program, alliance, location and game message,
+ * so autonomous only has to pick one up and run it.
+ */
+
+public class AutoPlan
+{
+	// Number of programs selectable with AutoProgramSelect (0 to PROGRAM_COUNT - 1).
+	public static final int		PROGRAM_COUNT = 3;
+
+	// Distance from the alliance wall to past the auto line, inches.
+	private static final double	AUTO_LINE_DISTANCE = 120;
+
+	// Distances for the center start switch program, inches.
+	private static final double	SWITCH_FIRST_LEG = 36, SWITCH_DIAGONAL = 72, SWITCH_LAST_LEG = 20;
+
+	public final int					program, location;
+	public final DriverStation.Alliance	alliance;
+	public final String					gameMessage, key;
+
+	// Drive steps in order. turns[i] is true if profiles[i] is a turn in place.
+	public final MotionProfile[]		profiles;
+	public final boolean[]				turns;
+
+	// The steps as a command run by the CommandScheduler.
+	public final Command				command;
+
+	// Time in ms it took to build this plan.
+	public final double					buildTimeMs;
+
+	private AutoPlan(int program, DriverStation.Alliance alliance, int location, String gameMessage,
+			MotionProfile[] profiles, boolean[] turns, Properties properties, long startNs)
+	{
+		DriveProfileFollower	follower = new DriveProfileFollower(properties);
+		Command[]				steps = new Command[profiles.length];
+		
+		for (int i = 0; i < profiles.length; i++)
+			steps[i] = new DriveProfileCommand(follower, profiles[i], turns[i]);
+		
+
+		this.program = program;
+		this.alliance = alliance;
+		this.location = location;
+		this.gameMessage = gameMessage;
+		this.profiles = profiles;
+		this.turns = turns;
+
+		key = key(program, alliance, location, gameMessage);
+		
+		command = new SequentialCommandGroup("Program " + program, steps);
+
+		buildTimeMs = (System.nanoTime() - startNs) / 1000000.0;
+	}
+
+	// Cache key for a program variant.
+
+	public static String key(int program, DriverStation.Alliance alliance, int location, String gameMessage)
+	{
+		return program + "|" + alliance + "|" + location + "|" + gameMessage;
+	}
+
+	/**
+	 * Build a plan, generating all its motion profiles and its command.
+	 * @param program Auto program number.
+	 * @param alliance Our alliance.
+	 * @param location Our driver station location (start position).
+	 * @param gameMessage FMS game specific message.
+	 * @param properties Robot properties with the profile limits.
+	 */
+
+	public static AutoPlan build(int program, DriverStation.Alliance alliance, int location, String gameMessage,
+			Properties properties)
+	{
+		long			start = System.nanoTime();
+		MotionProfile[]	profiles;
+		boolean[]		turns;
+		double			side;
+
+		switch (program)
+		{
+			case 1:		// Drive forward across the auto line.
+				// For this robot - power is forward, so forward moves are - distance.
+				profiles = new MotionProfile[] {straightProfile(-AUTO_LINE_DISTANCE, properties)};
+				turns = new boolean[] {false};
+				break;
+
+			case 2:		// Center start, drive to the front of our side of the switch.
+				// First character of the game message is our switch side. Turn towards it,
+				// drive the diagonal, turn back square and drive up to the switch.
+				side = gameMessage != null && gameMessage.length() > 0 && gameMessage.charAt(0) == 'L' ? 1 : -1;
+
+				profiles = new MotionProfile[] {
+						straightProfile(-SWITCH_FIRST_LEG, properties),
+						rotateProfile(45 * side, properties),
+						straightProfile(-SWITCH_DIAGONAL, properties),
+						rotateProfile(-45 * side, properties),
+						straightProfile(-SWITCH_LAST_LEG, properties)};
+				turns = new boolean[] {false, true, false, true, false};
+				break;
+
+			default:	// No auto program.
+				profiles = new MotionProfile[0];
+				turns = new boolean[0];
+				break;
+		}
+
+		return new AutoPlan(program, alliance, location, gameMessage, profiles, turns, properties, start);
+	}
+
+	// Generate S-curve profile for a straight move using the limits in Robot.properties.
+
+	static MotionProfile straightProfile(double inches, Properties properties)
+	{
+		return MotionProfile.sCurve(inches, RobotProperties.getDouble(properties, "ProfileMaxVelocity", 120),
+				RobotProperties.getDouble(properties, "ProfileMaxAcceleration", 150),
+				RobotProperties.getDouble(properties, "ProfileMaxJerk", 600),
+				Autonomous.CONTROL_LOOP_PERIOD);
+	}
+
+	// Generate S-curve profile for a turn in place. The profile is the arc each wheel
+	// travels. + degrees drives the left side in the + power direction, which turns
+	// the robot left (counter clockwise).
+
+	static MotionProfile rotateProfile(double degrees, Properties properties)
+	{
+		double arc = Math.toRadians(degrees) * RobotProperties.getDouble(properties, "DriveTrackWidth", 24) / 2;
+
+		return MotionProfile.sCurve(arc, RobotProperties.getDouble(properties, "ProfileMaxTurnVelocity", 60),
+				RobotProperties.getDouble(properties, "ProfileMaxTurnAcceleration", 100),
+				RobotProperties.getDouble(properties, "ProfileMaxJerk", 600),
+				Autonomous.CONTROL_LOOP_PERIOD);
+	}
+
+	public void log()
+	{
+		Util.consoleLog("plan %s steps=%d build=%.2fms", key, profiles.length, buildTimeMs);
+	}
+}
@@ -0,0 +1,129 @@
+package Team4450.Robot11;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import Team4450.Lib.Util;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Background task that builds and caches every autonomous program variant
+ * while the robot is disabled, so autonomous starts with a ready plan. Plans
+ * are keyed by program, alliance, location and game message. When alliance,
+ * location or game message change the cache is cleared and rebuilt. If the game
+ * message is not known yet, plans are built for every possible message.
+ */
+
+public class AutoPlanner extends Thread
+{
+	// FIRST POWER UP game messages: our switch, scale, their switch sides.
+	private static final String[]	POSSIBLE_MESSAGES = {"LLL", "LRL", "RLR", "RRR"};
+	private static final long		POLL_INTERVAL_MS = 250;
+
+	// This variable and method make sure this class is a singleton. A planner
+	// thread that has ended (on an exception) is replaced by a new one, since a
+	// thread can't be started again.
+
+	private static AutoPlanner	planner = null;
+
+	public static AutoPlanner getInstance(Robot robot)
+	{
+		if (planner == null || planner.getState() == Thread.State.TERMINATED) planner = new AutoPlanner(robot);
+
+		return planner;
+	}
+
+	// This is the rest of the class.
+
+	private final Robot							robot;
+	private final ConcurrentHashMap<String, AutoPlan>	cache = new ConcurrentHashMap<String, AutoPlan>();
+	private String								lastInputs;
+
+	private AutoPlanner(Robot robot)
+	{
+		Util.consoleLog();
+
+		this.robot = robot;
+
+		setName("AutoPlanner");
+		setPriority(Thread.MIN_PRIORITY);
+		setDaemon(true);
+	}
+
+	public void run()
+	{
+		Util.consoleLog();
+
+		try
+		{
+			while (!isInterrupted())
+			{
+				if (robot.isDisabled()) refresh();
+
+				Hardware.sleep(POLL_INTERVAL_MS * 1000);
+			}
+		}
+		catch (Throwable e) {Util.logException(e);}
+
+		Util.consoleLog("end");
+	}
+
+	// Check plan inputs and build any plans missing from the cache.
+
+	private void refresh()
+	{
+		DriverStation.Alliance	alliance = Devices.ds.getAlliance();
+		int						location = Devices.ds.getLocation();
+		String					gameMessage = Devices.ds.getGameSpecificMessage();
+		String					inputs = alliance + "|" + location + "|" + gameMessage;
+
+		if (!inputs.equals(lastInputs))
+		{
+			Util.consoleLog("inputs changed %s, rebuilding plans", inputs);
+
+			cache.clear();
+			lastInputs = inputs;
+		}
+
+		for (int program = 0; program < AutoPlan.PROGRAM_COUNT; program++)
+		{
+			if (gameMessage == null || gameMessage.isEmpty())
+				for (String message : POSSIBLE_MESSAGES)
+					buildIfMissing(program, alliance, location, message);
+			else
+				buildIfMissing(program, alliance, location, gameMessage);
+		}
+	}
+
+	private void buildIfMissing(int program, DriverStation.Alliance alliance, int location, String gameMessage)
+	{
+		String		key = AutoPlan.key(program, alliance, location, gameMessage);
+		AutoPlan	plan;
+
+		if (cache.containsKey(key)) return;
+
+		plan = AutoPlan.build(program, alliance, location, gameMessage, robot.robotProperties);
+
+		cache.put(key, plan);
+
+		plan.log();
+	}
+
+	/**
+	 * Return the plan for the given inputs. Builds it now if it is not cached,
+	 * which should only happen if the inputs changed right at enable.
+	 */
+
+	public AutoPlan getPlan(int program, DriverStation.Alliance alliance, int location, String gameMessage)
+	{
+		AutoPlan plan = cache.get(AutoPlan.key(program, alliance, location, gameMessage));
+
+		if (plan == null)
+		{
+			Util.consoleLog("plan cache miss, building now");
+
+			plan = AutoPlan.build(program, alliance, location, gameMessage, robot.robotProperties);
+		}
+
+		return plan;
+	}
+}
@@ -3,21 +3,32 @@ package Team4450.Robot11;
 
 import Team4450.Lib.*;
 import Team4450.Robot11.Devices;
-//import edu.wpi.first.wpilibj.Encoder;
-import edu.wpi.first.wpilibj.Timer;
-//import edu.wpi.first.wpilibj.CounterBase.EncodingType;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 public class Autonomous
 {
-	private final Robot	robot;
-	private final int	program = (int) SmartDashboard.getNumber("AutoProgramSelect",0);
+	static final double			CONTROL_LOOP_PERIOD = .020;
+
+	private final Robot			robot;
+	private final AutoPlan		plan;
+	private final int			program;
+	private final ControlLoop	controlLoop = new ControlLoop("Autonomous", CONTROL_LOOP_PERIOD);
+	private final CommandScheduler	scheduler = new CommandScheduler(controlLoop);
+	private final FlightRecorder.Record	record = new FlightRecorder.Record();
+	
+	// Plan comes from AutoPlanner, built while disabled, so no planning happens here.
 	
-	Autonomous(Robot robot)
+	Autonomous(Robot robot, AutoPlan plan)
 	{
 		Util.consoleLog();
 		
 		this.robot = robot;		
+		this.plan = plan;
+		
+		program = plan.program;
+
+		controlLoop.getLoadShedder().setThresholds(
+				RobotProperties.getDouble(robot.robotProperties, "LoadShedBestEffort", .6),
+				RobotProperties.getDouble(robot.robotProperties, "LoadShedNormal", .9));
 	}
 
 	public void dispose()
@@ -25,11 +36,41 @@ public class Autonomous
 		Util.consoleLog();
 	}
 	
+	ControlLoop getControlLoop()
+	{
+		return controlLoop;
+	}
+
 	private boolean isAutoActive()
 	{
 		return robot.isEnabled() && robot.isAutonomous();
 	}
 
+	// Loop condition used by the auto control loops.
+
+	private final ControlLoop.Condition autoActive = new ControlLoop.Condition()
+	{
+		public boolean isActive() { return isAutoActive(); }
+	};
+
+	// Record each tick's NavX, drive outputs and current after the commands run.
+	// Normal priority, every other tick is dropped when the loop is badly overloaded.
+
+	private final ControlLoop.Body recordTick = new ControlLoop.Body()
+	{
+		public void tick()
+		{
+			FlightRecorder	recorder = FlightRecorder.getInstance();
+
+			if (recorder == null || !controlLoop.getLoadShedder().allow(LoadShedder.NORMAL)) return;
+
+			record.sample();
+			record.mode = FlightRecorder.AUTONOMOUS;
+
+			recorder.write(record);
+		}
+	};
+
 	public void execute()
 	{
 		Util.consoleLog("Alliance=%s, Location=%d, Program=%d, FMS=%b, msg=%s", robot.alliance.name(), robot.location, program, 
@@ -39,94 +80,21 @@ public class Autonomous
 
 		Devices.robotDrive.setSafetyEnabled(false);
 
-		//TODO Encoder likely used, so just commenting out.
-		// Initialize encoder.
-		//Devices.encoder.reset();
-        
-		//TODO NavX likely used, so just commenting out.
-        // Set gyro/NavX to heading 0.
-        //robot.gyro.reset();
-		//Devices.navx.resetYaw();
-		
-        // Wait to start motors so gyro will be zero before first movement.
-        //Timer.delay(.50);
+		if (robot.isComp) Devices.SetCANTalonBrakeMode(true);
 
-		switch (program)
-		{
-			case 0:		// No auto program.
-				break;
-		}
-		
-		Util.consoleLog("end");
-	}
+		// Run the plan's command tree on the control loop until done or auto ends.
 
-	//TODO May likely be used, will need modification to work.
-	/*
-	// Auto drive in set direction and power for specified encoder count. Stops
-	// with or without brakes on CAN bus drive system. Uses gyro/NavX to go straight.
-	
-	private void autoDrive(double power, int encoderCounts, boolean enableBrakes)
-	{
-		int		angle;
-		double	gain = .03;
+		scheduler.setTickListener(recordTick);
+		scheduler.schedule(plan.command);
 		
-		Util.consoleLog("pwr=%.2f, count=%d, brakes=%b", power, encoderCounts, enableBrakes);
-
-		if (robot.isComp) Devices.SetCANTalonBrakeMode(enableBrakes);
+		scheduler.run(autoActive);
 
-		Devices.encoder.reset();
-		Devices.navx.resetYaw();
+		if (scheduler.getFirstTickTime() != 0)
+			Util.consoleLog("enable to first command tick=%.1fms",
+					(scheduler.getFirstTickTime() - robot.autoStartUs) / 1000.0);
 		
-		while (isAutoActive() && Math.abs(Devices.encoder.get()) < encoderCounts) 
-		{
-			LCD.printLine(4, "encoder=%d", Devices.encoder.get());
-			
-			// Angle is negative if robot veering left, positive if veering right when going forward.
-			// It is opposite when going backward. Note that for this robot, - power means forward and
-			// + power means backward.
-			
-			//angle = (int) robot.gyro.getAngle();
-			angle = (int) Devices.navx.getYaw();
-
-			LCD.printLine(5, "angle=%d", angle);
-			
-			// Invert angle for backwards.
-			
-			if (power > 0) angle = -angle;
-			
-			//Util.consoleLog("angle=%d", angle);
-			
-			// Note we invert sign on the angle because we want the robot to turn in the opposite
-			// direction than it is currently going to correct it. So a + angle says robot is veering
-			// right so we set the turn value to - because - is a turn left which corrects our right
-			// drift.
-			
-			Devices.robotDrive.drive(power, -angle * gain);
-			
-			Timer.delay(.020);
-		}
-
-		Devices.robotDrive.tankDrive(0, 0, true);				
+		scheduler.report();
 		
-		Util.consoleLog("end: actual count=%d", Math.abs(Devices.encoder.get()));
-	}
-	
-	// Auto rotate left or right the specified angle. Left/right from robots forward view.
-	// Turn right, power is -
-	// Turn left, power is +
-	// angle of rotation is always +.
-	
-	private void autoRotate(double power, int angle)
-	{
-		Util.consoleLog("pwr=%.2f  angle=%d", power, angle);
-		
-		Devices.navx.resetYaw();
-		
-		Devices.robotDrive.tankDrive(power, -power);
-
-		while (isAutoActive() && Math.abs((int) Devices.navx.getYaw()) < angle) {Timer.delay(.020);} 
-		
-		Devices.robotDrive.tankDrive(0, 0);
+		Util.consoleLog("end");
 	}
-	*/
-}
\ No newline at end of file
+}
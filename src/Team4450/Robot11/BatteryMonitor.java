@@ -0,0 +1,45 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.Util;
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * MonitorScheduler task watching the battery voltage at the roboRIO. Publishes
+ * the voltage and a low battery indicator, which comes on below the low voltage
+ * and goes off again .5 volts above it so load sag does not make it flicker.
+ */
+
+public class BatteryMonitor implements MonitorScheduler.Task
+{
+	private static final double	HYSTERESIS = .5;
+
+	private final double		lowVoltage;
+	private boolean				low;
+
+	/**
+	 * @param lowVoltage Voltage under which the battery is low.
+	 */
+
+	public BatteryMonitor(double lowVoltage)
+	{
+		this.lowVoltage = lowVoltage;
+	}
+
+	public void run()
+	{
+		double	voltage = RobotController.getBatteryVoltage();
+
+		Telemetry.setNumber(Telemetry.BATTERY_VOLTAGE, voltage);
+
+		if (!low && voltage < lowVoltage)
+		{
+			low = true;
+
+			Util.consoleLog("low battery %.2fV", voltage);
+		}
+		else if (low && voltage > lowVoltage + HYSTERESIS)
+			low = false;
+
+		Telemetry.setBoolean(Telemetry.LOW_BATTERY, low);
+	}
+}
@@ -0,0 +1,36 @@
+package Team4450.Robot11;
+
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Source of time and sleeps for robot code. On the robot it is the FPGA clock.
+ * Tests and the simulator install a VirtualClock, where time only moves when
+ * the code sleeps, so a match runs in milliseconds with repeatable timing.
+ * Robot code reads time and sleeps through Hardware.getTime() and
+ * Hardware.sleep() instead of RobotController, Timer or Thread.sleep().
+ */
+
+public interface Clock
+{
+	// Current time in microseconds.
+
+	long getTimeUs();
+
+	/**
+	 * Sleep the calling thread. Like Timer.delay(), an interrupt ends the sleep
+	 * early and leaves the thread's interrupted flag set.
+	 * @param us Time to sleep in microseconds.
+	 */
+
+	void sleepUs(long us);
+
+	// FPGA clock used on the robot.
+
+	public static final Clock	FPGA = new Clock()
+	{
+		public long getTimeUs() { return RobotController.getFPGATime(); }
+
+		public void sleepUs(long us) { if (us > 0) Timer.delay(us / 1000000.0); }
+	};
+}
@@ -0,0 +1,239 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+
+import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.DemandType;
+import com.ctre.phoenix.motorcontrol.FeedbackDevice;
+import com.ctre.phoenix.motorcontrol.FollowerType;
+import com.ctre.phoenix.motorcontrol.RemoteSensorSource;
+import com.ctre.phoenix.motorcontrol.SensorTerm;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
+import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
+
+import Team4450.Lib.Util;
+
+/**
+ * Drive mode that runs velocity control, and heading hold when driving straight,
+ * in the Talon SRX firmware at its 1ms loop rate. Java only sends setpoints.
+ *
+ * Requires the FOLLOWER drive topology with quadrature encoders on the front
+ * (leader) Talon of each side. In tank drive each leader runs a velocity loop
+ * on its own encoder. When driving straight the right leader reads the left
+ * encoder as a remote sensor and runs two PID loops: primary on the encoder
+ * average (velocity) and auxiliary on the encoder difference (heading), and the
+ * left leader follows the right leader's auxiliary output, so the heading
+ * correction is added to one side and subtracted from the other on the
+ * controllers. The right leader's primary sensor is switched between its own
+ * encoder and the average when the mode changes. The NavX is not a CAN device so it cannot be used by the Talons,
+ * the encoder difference stands in for heading.
+ *
+ * Both sides must count positive when driving in the + power direction, so the
+ * right side Talons are inverted on the controller and the DifferentialDrive
+ * right side inversion is turned off to keep open loop behavior the same.
+ */
+
+public class ClosedLoopDrive
+{
+	private static final int	PID_PRIMARY = 0, PID_TURN = 1, SLOT_VELOCITY = 0, SLOT_TURN = 1;
+	private static final int	REMOTE_0 = 0, TIMEOUT = 10, NO_WAIT = 0;
+
+	private final WPI_TalonSRX	left, right;
+	private final double		maxVelocity, headingUnitsPerDegree;
+	private double				headingTarget, leftOutput, rightOutput;
+	private boolean				holdingHeading, averageSensor;
+
+	/**
+	 * Configure the leader Talons for closed loop drive. Gains are read from
+	 * Robot.properties: DriveVelocityKP/KI/KD/KF, DriveHeadingKP/KI/KD,
+	 * DriveMaxVelocity (encoder units per 100ms at full stick), DriveHeadingUnitsPerDegree
+	 * (encoder difference units per degree of rotation) and DriveEncoderPhase.
+	 * @param left Left side leader Talon.
+	 * @param right Right side leader Talon.
+	 * @param properties Robot properties.
+	 */
+
+	ClosedLoopDrive(WPI_TalonSRX left, WPI_TalonSRX right, Properties properties)
+	{
+		boolean	encoderPhase = RobotProperties.getBoolean(properties, "DriveEncoderPhase", false);
+
+		this.left = left;
+		this.right = right;
+
+		maxVelocity = RobotProperties.getDouble(properties, "DriveMaxVelocity", 4000);
+		headingUnitsPerDegree = RobotProperties.getDouble(properties, "DriveHeadingUnitsPerDegree", 1);
+
+		Util.consoleLog("maxVelocity=%.0f headingUnits/deg=%.2f", maxVelocity, headingUnitsPerDegree);
+
+		// Left leader: own encoder, velocity loop for tank driving. Left encoder is
+		// reported quickly since the right leader uses it as a remote sensor.
+
+		left.configSelectedFeedbackSensor(FeedbackDevice.QuadEncoder, PID_PRIMARY, TIMEOUT);
+		left.setSensorPhase(encoderPhase);
+		left.setStatusFramePeriod(StatusFrameEnhanced.Status_2_Feedback0, 5, TIMEOUT);
+
+		// Right leader: primary loop on its own encoder for tank driving, or on
+		// (left + right) / 2 when driving straight. Aux loop on right - left.
+
+		right.configRemoteFeedbackFilter(left.getDeviceID(), RemoteSensorSource.TalonSRX_SelectedSensor, REMOTE_0, TIMEOUT);
+		right.configSensorTerm(SensorTerm.Sum0, FeedbackDevice.RemoteSensor0, TIMEOUT);
+		right.configSensorTerm(SensorTerm.Sum1, FeedbackDevice.QuadEncoder, TIMEOUT);
+		right.configSensorTerm(SensorTerm.Diff1, FeedbackDevice.RemoteSensor0, TIMEOUT);
+		right.configSensorTerm(SensorTerm.Diff0, FeedbackDevice.QuadEncoder, TIMEOUT);
+
+		right.configSelectedFeedbackSensor(FeedbackDevice.QuadEncoder, PID_PRIMARY, TIMEOUT);
+		right.configSelectedFeedbackCoefficient(1, PID_PRIMARY, TIMEOUT);
+		right.configSelectedFeedbackSensor(FeedbackDevice.SensorDifference, PID_TURN, TIMEOUT);
+		right.configSelectedFeedbackCoefficient(1, PID_TURN, TIMEOUT);
+		right.setSensorPhase(encoderPhase);
+
+		right.setStatusFramePeriod(StatusFrameEnhanced.Status_12_Feedback1, 20, TIMEOUT);
+		right.setStatusFramePeriod(StatusFrameEnhanced.Status_14_Turn_PIDF1, 20, TIMEOUT);
+
+		// Gains. Velocity slot on both leaders, heading slot on the right leader.
+
+		configVelocityGains(left, properties);
+		configVelocityGains(right, properties);
+
+		right.config_kP(SLOT_TURN, RobotProperties.getDouble(properties, "DriveHeadingKP", 0), TIMEOUT);
+		right.config_kI(SLOT_TURN, RobotProperties.getDouble(properties, "DriveHeadingKI", 0), TIMEOUT);
+		right.config_kD(SLOT_TURN, RobotProperties.getDouble(properties, "DriveHeadingKD", 0), TIMEOUT);
+		right.config_kF(SLOT_TURN, 0, TIMEOUT);
+		right.configClosedLoopPeakOutput(SLOT_TURN, 0.5, TIMEOUT);
+
+		right.configAuxPIDPolarity(false, TIMEOUT);
+	}
+
+	private void configVelocityGains(WPI_TalonSRX talon, Properties properties)
+	{
+		talon.config_kP(SLOT_VELOCITY, RobotProperties.getDouble(properties, "DriveVelocityKP", 0), TIMEOUT);
+		talon.config_kI(SLOT_VELOCITY, RobotProperties.getDouble(properties, "DriveVelocityKI", 0), TIMEOUT);
+		talon.config_kD(SLOT_VELOCITY, RobotProperties.getDouble(properties, "DriveVelocityKD", 0), TIMEOUT);
+		talon.config_kF(SLOT_VELOCITY, RobotProperties.getDouble(properties, "DriveVelocityKF", 0), TIMEOUT);
+	}
+
+	// Select the right leader's primary sensor, the encoder average when driving
+	// straight or its own encoder for tank. Only sent on a change, without waiting
+	// for the Talon to confirm since this runs in the control loop.
+
+	private void selectAverageSensor(boolean average)
+	{
+		if (average == averageSensor) return;
+
+		if (average)
+		{
+			right.configSelectedFeedbackSensor(FeedbackDevice.SensorSum, PID_PRIMARY, NO_WAIT);
+			right.configSelectedFeedbackCoefficient(0.5, PID_PRIMARY, NO_WAIT);
+		}
+		else
+		{
+			right.configSelectedFeedbackSensor(FeedbackDevice.QuadEncoder, PID_PRIMARY, NO_WAIT);
+			right.configSelectedFeedbackCoefficient(1, PID_PRIMARY, NO_WAIT);
+		}
+
+		averageSensor = average;
+	}
+
+	/**
+	 * Tank drive with velocity setpoints. Same sign convention and input squaring
+	 * as DifferentialDrive.tankDrive.
+	 * @param leftSpeed -1 to +1 of max velocity.
+	 * @param rightSpeed -1 to +1 of max velocity.
+	 * @param squaredInputs True to square the inputs, keeping the sign, for finer
+	 * control at low speed.
+	 */
+
+	public void tankDrive(double leftSpeed, double rightSpeed, boolean squaredInputs)
+	{
+		if (squaredInputs)
+		{
+			leftSpeed = Math.copySign(leftSpeed * leftSpeed, leftSpeed);
+			rightSpeed = Math.copySign(rightSpeed * rightSpeed, rightSpeed);
+		}
+
+		holdingHeading = false;
+		leftOutput = leftSpeed;
+		rightOutput = rightSpeed;
+
+		selectAverageSensor(false);
+
+		left.selectProfileSlot(SLOT_VELOCITY, PID_PRIMARY);
+		right.selectProfileSlot(SLOT_VELOCITY, PID_PRIMARY);
+
+		left.set(ControlMode.Velocity, leftSpeed * maxVelocity);
+		right.set(ControlMode.Velocity, rightSpeed * maxVelocity);
+
+		Devices.robotDrive.feed();
+	}
+
+	/**
+	 * Drive straight at a velocity holding the heading captured on the first call
+	 * (or by holdHeading()). Heading correction runs in the right leader, the left
+	 * leader follows its auxiliary output.
+	 * @param speed -1 to +1 of max velocity.
+	 */
+
+	public void driveStraight(double speed)
+	{
+		if (!holdingHeading) holdHeading();
+
+		leftOutput = rightOutput = speed;
+
+		selectAverageSensor(true);
+
+		right.selectProfileSlot(SLOT_VELOCITY, PID_PRIMARY);
+		right.selectProfileSlot(SLOT_TURN, PID_TURN);
+
+		right.set(ControlMode.Velocity, speed * maxVelocity, DemandType.AuxPID, headingTarget);
+		left.follow(right, FollowerType.AuxOutput1);
+
+		Devices.robotDrive.feed();
+	}
+
+	// Capture the current encoder difference as the heading to hold.
+
+	public void holdHeading()
+	{
+		headingTarget = right.getSelectedSensorPosition(PID_TURN);
+		holdingHeading = true;
+	}
+
+	/**
+	 * Change the held heading by the given number of degrees.
+	 * @param degrees + is the same direction as + encoder difference.
+	 */
+
+	public void turnHeading(double degrees)
+	{
+		headingTarget += degrees * headingUnitsPerDegree;
+	}
+
+	// Return heading error in degrees as computed by the right leader.
+
+	public double getHeadingError()
+	{
+		return right.getClosedLoopError(PID_TURN) / headingUnitsPerDegree;
+	}
+
+	// Return the last velocity commanded on each side as a fraction of max velocity,
+	// before heading correction.
+
+	public double getLeftOutput()
+	{
+		return leftOutput;
+	}
+
+	public double getRightOutput()
+	{
+		return rightOutput;
+	}
+
+	public void stop()
+	{
+		holdingHeading = false;
+		leftOutput = rightOutput = 0;
+
+		left.set(ControlMode.PercentOutput, 0);
+		right.set(ControlMode.PercentOutput, 0);
+	}
+}
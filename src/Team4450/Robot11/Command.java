@@ -0,0 +1,131 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.Util;
+
+/**
+ * Base class for a non-blocking autonomous step. A command is started, then
+ * ticked once per control loop tick until it reports finished, and then ended.
+ * Subclasses override initialize(), execute(), isFinished() and end(); none of
+ * them may block or allocate. Commands are composed with SequentialCommandGroup
+ * and ParallelCommandGroup and run by a CommandScheduler, all on the one control
+ * loop thread.
+ *
+ * Each command records its run time, tick count and execute time (average and
+ * max, including isFinished() and children for groups) so report() can show
+ * where auto time goes. A command may be run again after it ends.
+ */
+
+public abstract class Command
+{
+	private final String	name;
+	private boolean			running, interrupted;
+	private long			startUs, runUs, executeUs, maxExecuteUs;
+	private int				ticks;
+
+	protected Command(String name)
+	{
+		this.name = name;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	// Called once when the command starts.
+
+	protected void initialize() {}
+
+	// Called every tick while the command runs.
+
+	protected void execute() {}
+
+	// Return true when the command is done. Checked after each execute().
+
+	protected abstract boolean isFinished();
+
+	// Called once when the command finishes or is canceled (interrupted true).
+
+	protected void end(boolean interrupted) {}
+
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	// Start the command. Used by the scheduler and groups.
+
+	final void start()
+	{
+		startUs = Hardware.getTime();
+		runUs = executeUs = maxExecuteUs = 0;
+		ticks = 0;
+		interrupted = false;
+		running = true;
+
+		initialize();
+	}
+
+	/**
+	 * Run one tick of a started command: execute() then isFinished(), ending the
+	 * command when finished.
+	 * @return True when the command has finished.
+	 */
+
+	final boolean tick()
+	{
+		long	tickStartUs, elapsedUs;
+		boolean	finished;
+
+		if (!running) return true;
+
+		tickStartUs = Hardware.getTime();
+
+		execute();
+
+		finished = isFinished();
+
+		elapsedUs = Hardware.getTime() - tickStartUs;
+
+		executeUs += elapsedUs;
+		ticks++;
+
+		if (elapsedUs > maxExecuteUs) maxExecuteUs = elapsedUs;
+
+		if (finished) finish(false);
+
+		return finished;
+	}
+
+	// Stop a running command, calling end(true).
+
+	final void cancel()
+	{
+		if (running) finish(true);
+	}
+
+	private void finish(boolean interrupted)
+	{
+		running = false;
+		this.interrupted = interrupted;
+
+		end(interrupted);
+
+		runUs = Hardware.getTime() - startUs;
+	}
+
+	// Log this command's timing from its last run. Groups also report their children.
+
+	public void report()
+	{
+		report(0);
+	}
+
+	void report(int depth)
+	{
+		Util.consoleLog("%" + (depth * 2 + 1) + "s%s run=%.1fms ticks=%d execute avg=%.3fms max=%.3fms%s", "",
+				name, (running ? Hardware.getTime() - startUs : runUs) / 1000.0, ticks,
+				ticks == 0 ? 0 : executeUs / 1000.0 / ticks, maxExecuteUs / 1000.0,
+				running ? " (running)" : interrupted ? " (canceled)" : "");
+	}
+}
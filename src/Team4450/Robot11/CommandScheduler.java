@@ -0,0 +1,113 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.Util;
+
+/**
+ * Runs commands on a ControlLoop. Each tick, every scheduled command is ticked
+ * once in the order scheduled. Commands are held in a fixed size array so
+ * ticking does not allocate. Everything runs on the thread calling run().
+ */
+
+public class CommandScheduler
+{
+	private static final int	MAX_COMMANDS = 8;
+
+	private final ControlLoop	controlLoop;
+	private final Command[]		commands = new Command[MAX_COMMANDS];
+	private int					commandCount, running;
+	private long				firstTickUs;
+	private ControlLoop.Body	tickListener;
+
+	private final ControlLoop.Body	body = new ControlLoop.Body()
+	{
+		public void tick() { CommandScheduler.this.tick(); }
+	};
+
+	public CommandScheduler(ControlLoop controlLoop)
+	{
+		this.controlLoop = controlLoop;
+	}
+
+	/**
+	 * Add and start a command. It runs until it finishes or the scheduler is
+	 * canceled.
+	 */
+
+	public void schedule(Command command)
+	{
+		if (commandCount == MAX_COMMANDS) throw new IllegalStateException("Too many commands scheduled");
+
+		commands[commandCount++] = command;
+
+		command.start();
+
+		running++;
+	}
+
+	// Set code to run on every tick after the commands, such as recording. Null for none.
+
+	public void setTickListener(ControlLoop.Body listener)
+	{
+		tickListener = listener;
+	}
+
+	// Tick every running command once. Stops the control loop when all are finished.
+
+	public void tick()
+	{
+		if (firstTickUs == 0) firstTickUs = Hardware.getTime();
+
+		for (int i = 0; i < commandCount; i++)
+			if (commands[i].isRunning() && commands[i].tick()) running--;
+
+		if (tickListener != null) tickListener.tick();
+
+		if (running == 0) controlLoop.stop();
+	}
+
+	/**
+	 * Run the control loop ticking scheduled commands until they have all finished
+	 * or the condition goes inactive. Any commands still running are then canceled.
+	 */
+
+	public void run(ControlLoop.Condition condition)
+	{
+		if (running > 0) controlLoop.run(condition, body);
+
+		cancelAll();
+	}
+
+	public void cancelAll()
+	{
+		for (int i = 0; i < commandCount; i++) commands[i].cancel();
+
+		running = 0;
+	}
+
+	public boolean isIdle()
+	{
+		return running == 0;
+	}
+
+	// FPGA time of the first tick, 0 if never ticked.
+
+	public long getFirstTickTime()
+	{
+		return firstTickUs;
+	}
+
+	// Log timing of all commands scheduled and clear the schedule.
+
+	public void report()
+	{
+		Util.consoleLog("commands=%d", commandCount);
+
+		for (int i = 0; i < commandCount; i++)
+		{
+			commands[i].report();
+			commands[i] = null;
+		}
+
+		commandCount = 0;
+	}
+}
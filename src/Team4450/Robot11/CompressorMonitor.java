@@ -0,0 +1,62 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.Util;
+import edu.wpi.first.wpilibj.AnalogInput;
+import edu.wpi.first.wpilibj.Compressor;
+
+/**
+ * MonitorScheduler task reading the air pressure sensor. Publishes the pressure,
+ * a low pressure indicator and whether the compressor is running. It is also the
+ * robot's PressureSensor: control code gets the last reading without an analog
+ * read.
+ */
+
+public class CompressorMonitor implements MonitorScheduler.Task, PressureSensor
+{
+	private final AnalogInput	sensor;
+	private final Compressor	compressor;
+	private final double		lowPressure;
+	private volatile double		voltage, pressure;
+	private boolean				low;
+
+	/**
+	 * @param sensor Analog pressure sensor, 0.5 to 4.5 volts for 0 to 200 psi.
+	 * @param compressor Compressor (PCM) to report on.
+	 * @param lowPressure Pressure under which to show the low pressure indicator.
+	 */
+
+	public CompressorMonitor(AnalogInput sensor, Compressor compressor, double lowPressure)
+	{
+		this.sensor = sensor;
+		this.compressor = compressor;
+		this.lowPressure = lowPressure;
+	}
+
+	public void run()
+	{
+		voltage = sensor.getVoltage();
+		pressure = voltage * 50 - 25;
+
+		Telemetry.setNumber(Telemetry.AIR_PRESSURE, pressure);
+		Telemetry.setBoolean(Telemetry.COMPRESSOR_RUNNING, compressor.enabled());
+
+		if (low != pressure < lowPressure)
+		{
+			low = !low;
+
+			Util.consoleLog("low pressure=%b %.0fpsi", low, pressure);
+		}
+
+		Telemetry.setBoolean(Telemetry.LOW_PRESSURE, low);
+	}
+
+	public double getVoltage()
+	{
+		return voltage;
+	}
+
+	public double getPressure()
+	{
+		return pressure;
+	}
+}
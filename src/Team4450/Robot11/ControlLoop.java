@@ -0,0 +1,219 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.Util;
+
+/**
+ * Fixed rate periodic scheduler for control loops. The loop body is run on the
+ * calling thread against absolute deadlines (start + n * period) so that the time
+ * the body takes does not add to the period and the loop does not drift. If the
+ * body overruns its deadline the next tick runs immediately to catch up. If we
+ * fall more than a full period behind, the missed ticks are skipped and the
+ * schedule is re-aligned to the original deadline grid.
+ *
+ * Each tick records loop body time and the period since the previous tick start
+ * into latency histograms, which are published to the dashboard once a second.
+ * Body time also feeds the loop's LoadShedder, which the body asks before doing
+ * work that can be dropped when the loop runs long. Telemetry is flushed after
+ * each tick at its own configured rate as best effort work, and once a second
+ * even while shedding.
+ */
+
+public class ControlLoop
+{
+	// Loop body registered by Teleop or Autonomous.
+
+	public interface Body
+	{
+		void tick();
+	}
+
+	// Condition that keeps the loop running. Usually mode enabled check.
+
+	public interface Condition
+	{
+		boolean isActive();
+	}
+
+	private static final long	PUBLISH_INTERVAL_US = 1000000;
+
+	private final String	name;
+	private final long		periodUs;
+	private final LatencyHistogram	bodyTime, tickPeriod;
+	private final LoadShedder	shedder;
+
+	private long			startUs, runUs, ticks, overruns, skipped;
+	private volatile boolean stopRequested, running;
+
+	/**
+	 * Create a loop scheduler.
+	 * @param name Name used in log output.
+	 * @param period Loop period in seconds (.020 = 50hz).
+	 */
+
+	public ControlLoop(String name, double period)
+	{
+		this.name = name;
+		this.periodUs = (long) (period * 1000000);
+
+		bodyTime = new LatencyHistogram(name + " Loop Time");
+		tickPeriod = new LatencyHistogram(name + " Loop Period");
+		shedder = new LoadShedder(name, period);
+
+		Util.consoleLog("%s period=%.3f", name, period);
+	}
+
+	/**
+	 * Run the loop body at the fixed rate until the condition goes false or
+	 * stop() is called. Blocks the calling thread. May be called more than once,
+	 * statistics accumulate over all runs of this loop.
+	 * @param condition Checked before each tick.
+	 * @param body Loop body called once per tick.
+	 */
+
+	public void run(Condition condition, Body body)
+	{
+		long	nowUs, deadlineUs, lateUs, missed, tickStartUs, lastTickStartUs = 0, publishUs;
+
+		stopRequested = false;
+		running = true;
+
+		startUs = Hardware.getTime();
+		deadlineUs = startUs;
+		publishUs = startUs + PUBLISH_INTERVAL_US;
+
+		while (!stopRequested && condition.isActive())
+		{
+			tickStartUs = Hardware.getTime();
+
+			if (lastTickStartUs != 0) tickPeriod.record(tickStartUs - lastTickStartUs);
+
+			lastTickStartUs = tickStartUs;
+
+			body.tick();
+
+			ticks++;
+
+			nowUs = Hardware.getTime();
+
+			bodyTime.record(nowUs - tickStartUs);
+			shedder.update(nowUs - tickStartUs);
+
+			if (nowUs >= publishUs)
+			{
+				bodyTime.publish();
+				tickPeriod.publish();
+				shedder.publish();
+				publishUs = nowUs + PUBLISH_INTERVAL_US;
+
+				Telemetry.flushNow();
+			}
+			else if (shedder.allow(LoadShedder.BEST_EFFORT))
+				Telemetry.flush();
+
+			deadlineUs += periodUs;
+
+			if (nowUs < deadlineUs)
+				Hardware.sleep(deadlineUs - nowUs);
+			else
+			{
+				overruns++;
+
+				// More than one period late, skip the ticks we missed instead of
+				// running a burst of back to back ticks.
+
+				lateUs = nowUs - deadlineUs;
+
+				if (lateUs >= periodUs)
+				{
+					missed = lateUs / periodUs;
+					skipped += missed;
+					deadlineUs += missed * periodUs;
+				}
+			}
+		}
+
+		runUs += Hardware.getTime() - startUs;
+		running = false;
+
+		logStatistics();
+	}
+
+	/**
+	 * Ask the loop to exit after the current tick.
+	 */
+
+	public void stop()
+	{
+		stopRequested = true;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public long getTicks()
+	{
+		return ticks;
+	}
+
+	// Number of ticks that finished after their deadline.
+
+	public long getOverruns()
+	{
+		return overruns;
+	}
+
+	// Number of ticks dropped to re-align after falling a full period behind.
+
+	public long getSkipped()
+	{
+		return skipped;
+	}
+
+	/**
+	 * Return the achieved tick rate in hz over all runs of this loop.
+	 */
+
+	public double getAchievedRate()
+	{
+		long elapsedUs = runUs + (running ? Hardware.getTime() - startUs : 0);
+
+		if (elapsedUs <= 0) return 0;
+
+		return ticks * 1000000.0 / elapsedUs;
+	}
+
+	// Load shedder the body asks before doing non critical work.
+
+	public LoadShedder getLoadShedder()
+	{
+		return shedder;
+	}
+
+	public LatencyHistogram getBodyTimeHistogram()
+	{
+		return bodyTime;
+	}
+
+	public LatencyHistogram getPeriodHistogram()
+	{
+		return tickPeriod;
+	}
+
+	public void logStatistics()
+	{
+		Util.consoleLog("%s ticks=%d rate=%.1fhz target=%.1fhz overruns=%d skipped=%d", name, ticks,
+				getAchievedRate(), 1000000.0 / periodUs, overruns, skipped);
+
+		shedder.logStatistics();
+	}
+
+	// Write the full loop time and period histograms to the log. Called when the mode ends.
+
+	public void dumpHistograms()
+	{
+		bodyTime.dump();
+		tickPeriod.dump();
+	}
+}
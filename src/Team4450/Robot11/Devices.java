@@ -1,6 +1,10 @@
 package Team4450.Robot11;
 
+import java.util.Properties;
+
+import com.ctre.phoenix.motorcontrol.ControlMode;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
 import com.ctre.phoenix.motorcontrol.can.*;
 
 import Team4450.Lib.NavX;
@@ -10,6 +14,7 @@ import edu.wpi.first.wpilibj.Compressor;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj.PowerDistributionPanel;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.drive.DifferentialDrive;
 import edu.wpi.first.wpilibj.SpeedControllerGroup;
 
@@ -18,7 +23,25 @@ public class Devices
 	  // Motor CAN ID/PWM port assignments (1=left-front, 2=left-rear, 3=right-front, 4=right-rear)
 	  private static WPI_TalonSRX	LFCanTalon, LRCanTalon, RFCanTalon, RRCanTalon, LSlaveCanTalon, RSlaveCanTalon;
 	  
+	  // Drive Talons in TalonStatusSampler.TALON_NAMES order.
+	  private static WPI_TalonSRX[]	driveTalons;
+	  
 	  public static DifferentialDrive	robotDrive;
+	  
+	  // How the three Talons on each side are driven. GROUP sends every motor its own set()
+	  // through a SpeedControllerGroup. FOLLOWER only commands the front Talon on each side,
+	  // the other two follow it on the controller, cutting CAN writes per tick from 6 to 2.
+	  public enum DriveTopology {GROUP, FOLLOWER}
+	  
+	  public static DriveTopology		driveTopology = DriveTopology.GROUP;
+	  
+	  // Talon onboard velocity/heading control. Null when closed loop drive is not enabled.
+	  public static ClosedLoopDrive		closedLoopDrive;
+	  
+	  // Drive encoders are on the front Talon of each side.
+	  private static double				encoderInchesPerCount = 1;
+	  private static int				leftEncoderSign = 1, rightEncoderSign = -1;
+	  private static int				rightPowerSign = -1;
 
 	  public final static Joystick      utilityStick = new Joystick(2);	
 	  public final static Joystick      leftStick = new Joystick(0);	
@@ -39,24 +62,48 @@ public class Devices
 	  
 	  public static void InitializeCANTalonDrive()
 	  {
-		  Util.consoleLog();
+		  InitializeCANTalonDrive(DriveTopology.GROUP, 0);
+	  }
+	  
+	  // Create RobotDrive object for CAN Talon controllers using the selected topology.
+	  // followerStatusPeriod is the status frame period in ms set on follower Talons,
+	  // 0 leaves the factory default.
+	  
+	  public static void InitializeCANTalonDrive(DriveTopology topology, int followerStatusPeriod)
+	  {
+		  CreateCANTalons();
 
+	      // Initialize CAN Talons and write status to log so we can verify
+	      // all the Talons are connected.
+		  for (WPI_TalonSRX talon : driveTalons) InitializeCANTalon(talon);
+		  
+		  ConfigureCANTalonDrive(topology, followerStatusPeriod);
+	  }
+	  
+	  // Create the drive Talon objects. The first step of InitializeCANTalonDrive(), which
+	  // robotInit runs as separate steps so the Talons can be initialized in parallel.
+	  
+	  public static void CreateCANTalons()
+	  {
 		  LFCanTalon = new WPI_TalonSRX(1);
 		  LRCanTalon = new WPI_TalonSRX(2);
 		  RFCanTalon = new WPI_TalonSRX(3);
 		  RRCanTalon = new WPI_TalonSRX(4);
 		  LSlaveCanTalon = new WPI_TalonSRX(5);
 		  RSlaveCanTalon = new WPI_TalonSRX(6);
+		  
+		  driveTalons = new WPI_TalonSRX[] {LFCanTalon, LRCanTalon, RFCanTalon, RRCanTalon, LSlaveCanTalon, RSlaveCanTalon};
+	  }
+	  
+	  // Set up the created and initialized drive Talons and the RobotDrive for the topology.
+	  // The last step of InitializeCANTalonDrive().
+	  
+	  public static void ConfigureCANTalonDrive(DriveTopology topology, int followerStatusPeriod)
+	  {
+		  Util.consoleLog("topology=%s followerStatusPeriod=%d", topology, followerStatusPeriod);
+		  
+		  driveTopology = topology;
 
-	      // Initialize CAN Talons and write status to log so we can verify
-	      // all the Talons are connected.
-	      InitializeCANTalon(LFCanTalon);
-	      InitializeCANTalon(LRCanTalon);
-	      InitializeCANTalon(RFCanTalon);
-	      InitializeCANTalon(RRCanTalon);
-	      InitializeCANTalon(LSlaveCanTalon);
-	      InitializeCANTalon(RSlaveCanTalon);
-	      
 	      // Configure CAN Talons with correct inversions.
 	      LFCanTalon.setInverted(true);
 		  LRCanTalon.setInverted(true);
@@ -70,11 +117,129 @@ public class Devices
 	      // Turn on brake mode for CAN Talons.
 	      SetCANTalonBrakeMode(true);
 	      
-	      // Setup the SpeedControllerGroups for the left and right set of motors.
-	      SpeedControllerGroup LeftGroup = new SpeedControllerGroup(LFCanTalon,LSlaveCanTalon,LRCanTalon);
-		  SpeedControllerGroup RightGroup = new SpeedControllerGroup(RFCanTalon,RSlaveCanTalon,RRCanTalon);
+	      if (topology == DriveTopology.FOLLOWER)
+	      {
+	    	  // Rear and slave Talons follow the front Talon on each side. Each follower
+	    	  // keeps its own inversion setting from above.
+	    	  LRCanTalon.follow(LFCanTalon);
+	    	  LSlaveCanTalon.follow(LFCanTalon);
+	    	  
+	    	  RRCanTalon.follow(RFCanTalon);
+	    	  RSlaveCanTalon.follow(RFCanTalon);
+	    	  
+	    	  // Followers are never read by the control loop so they can report less often.
+	    	  if (followerStatusPeriod > 0)
+	    	  {
+	    		  SetFollowerStatusFramePeriod(LRCanTalon, followerStatusPeriod);
+	    		  SetFollowerStatusFramePeriod(LSlaveCanTalon, followerStatusPeriod);
+	    		  SetFollowerStatusFramePeriod(RRCanTalon, followerStatusPeriod);
+	    		  SetFollowerStatusFramePeriod(RSlaveCanTalon, followerStatusPeriod);
+	    	  }
+	    	  
+	    	  robotDrive = new DifferentialDrive(LFCanTalon, RFCanTalon);
+	      }
+	      else
+	      {
+		      // Setup the SpeedControllerGroups for the left and right set of motors.
+		      SpeedControllerGroup LeftGroup = new SpeedControllerGroup(LFCanTalon,LSlaveCanTalon,LRCanTalon);
+			  SpeedControllerGroup RightGroup = new SpeedControllerGroup(RFCanTalon,RSlaveCanTalon,RRCanTalon);
+			  
+			  robotDrive = new DifferentialDrive(LeftGroup, RightGroup);
+	      }
+	      
+	      Hardware.drive = new TalonDriveTrain(robotDrive);
+	  }
+	  
+	  // Set up Talon onboard closed loop drive if enabled in the properties. Must be called
+	  // after InitializeCANTalonDrive() and needs the FOLLOWER topology.
+	  
+	  public static void InitializeClosedLoopDrive(Properties properties)
+	  {
+		  if (!RobotProperties.getBoolean(properties, "DriveClosedLoop", false)) return;
+		  
+		  if (driveTopology != DriveTopology.FOLLOWER)
+		  {
+			  Util.consoleLog("closed loop drive needs FOLLOWER topology, not enabled");
+			  return;
+		  }
+		  
+		  Util.consoleLog();
 		  
-		  robotDrive = new DifferentialDrive(LeftGroup, RightGroup);
+		  // Flip right side inversion on the controllers so both encoders count up in the
+		  // + power direction, and undo it in DifferentialDrive so open loop is unchanged.
+		  RFCanTalon.setInverted(false);
+		  RRCanTalon.setInverted(false);
+		  RSlaveCanTalon.setInverted(true);
+		  
+		  robotDrive.setRightSideInverted(false);
+		  rightPowerSign = 1;
+		  
+		  closedLoopDrive = new ClosedLoopDrive(LFCanTalon, RFCanTalon, properties);
+	  }
+	  
+	  // Set drive encoder scaling and direction from the properties. DriveInchesPerCount
+	  // converts encoder counts to inches, the Inverted flags make each side count up
+	  // when driven with + power.
+	  
+	  public static void ConfigureDriveEncoders(Properties properties)
+	  {
+		  encoderInchesPerCount = RobotProperties.getDouble(properties, "DriveInchesPerCount", 1);
+		  leftEncoderSign = RobotProperties.getBoolean(properties, "DriveLeftEncoderInverted", false) ? -1 : 1;
+		  rightEncoderSign = RobotProperties.getBoolean(properties, "DriveRightEncoderInverted", true) ? -1 : 1;
+		  
+		  Util.consoleLog("inches/count=%.5f left sign=%d right sign=%d", encoderInchesPerCount, leftEncoderSign,
+				  		  rightEncoderSign);
+	  }
+	  
+	  // Return drive encoder distances in inches, + in the + power direction. Reads the
+	  // raw quadrature count so it does not depend on how the Talon PID loops are set up.
+	  
+	  public static double GetLeftDistance()
+	  {
+		  return LFCanTalon.getSensorCollection().getQuadraturePosition() * leftEncoderSign * encoderInchesPerCount;
+	  }
+	  
+	  public static double GetRightDistance()
+	  {
+		  return RFCanTalon.getSensorCollection().getQuadraturePosition() * rightEncoderSign * encoderInchesPerCount;
+	  }
+	  
+	  // Return the last power commanded on each side, + in the + power direction. Open
+	  // loop it is read from the front Talon, which holds the last set() value, so there
+	  // is no CAN traffic. DifferentialDrive negates the right side unless closed loop
+	  // drive turned that off. While the Talons run closed loop velocity, get() is stale,
+	  // so it is the velocity commanded as a fraction of max velocity.
+	  
+	  public static double GetLeftPower()
+	  {
+		  if (closedLoopDrive != null && RFCanTalon.getControlMode() == ControlMode.Velocity)
+			  return closedLoopDrive.getLeftOutput();
+		  
+		  return LFCanTalon.get();
+	  }
+	  
+	  public static double GetRightPower()
+	  {
+		  if (closedLoopDrive != null && RFCanTalon.getControlMode() == ControlMode.Velocity)
+			  return closedLoopDrive.getRightOutput();
+		  
+		  return RFCanTalon.get() * rightPowerSign;
+	  }
+	  
+	  // Slow down the general and feedback status frames of a follower Talon. Current
+	  // is still reported (feedback frame) for TalonStatusSampler, just less often.
+	  
+	  private static void SetFollowerStatusFramePeriod(WPI_TalonSRX talon, int periodMs)
+	  {
+		  talon.setStatusFramePeriod(StatusFrameEnhanced.Status_1_General, periodMs, 0);
+		  talon.setStatusFramePeriod(StatusFrameEnhanced.Status_2_Feedback0, periodMs, 0);
+	  }
+	  
+	  // Return current CAN bus utilization in percent. HAL reports it as a fraction.
+	  
+	  public static double GetCANBusUtilization()
+	  {
+		  return RobotController.getCANStatus().percentBusUtilization * 100;
 	  }
 
 	  // Initialize and Log status indication from CANTalon. If we see an exception
@@ -127,17 +292,19 @@ public class Devices
 	  }
 	  */
 	  
-	  // Return voltage and current draw for each CAN Talon.
+	  // Return the drive Talons, null until InitializeCANTalonDrive() has run.
+	  
+	  static WPI_TalonSRX[] getDriveTalons()
+	  {
+		  return driveTalons;
+	  }
+	  
+	  // Return voltage and current draw for each CAN Talon. Formats the latest
+	  // TalonStatusSampler snapshot, no CAN reads are made.
 	  
 	  public static String GetCANTalonStatus()
 	  {
-		  return String.format("%.1f/%.1f  %.1f/%.1f  %.1f/%.1f  %.1f/%.1f  %.1f/%.1f  %.1f/%.1f", 
-				  LFCanTalon.getMotorOutputVoltage(), LFCanTalon.getOutputCurrent(),
-				  LRCanTalon.getMotorOutputVoltage(), LRCanTalon.getOutputCurrent(),
-				  RFCanTalon.getMotorOutputVoltage(), RFCanTalon.getOutputCurrent(),
-				  RRCanTalon.getMotorOutputVoltage(), RRCanTalon.getOutputCurrent(),
-				  LSlaveCanTalon.getMotorOutputVoltage(), LSlaveCanTalon.getOutputCurrent(),
-				  RSlaveCanTalon.getMotorOutputVoltage(), RSlaveCanTalon.getOutputCurrent());
+		  return TalonStatusSampler.getInstance().report();
 	  }
 
 }
@@ -0,0 +1,210 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+
+/**
+ * One pass of the teleop driving loop: NavX sample, input poll, stick shaping,
+ * drive output, LCD and dashboard, flight recording. Teleop runs it on its
+ * control loop reading the driver station. The teleop loop benchmark, Replay and
+ * the Simulator run the same code reading recorded or scripted sticks, so they
+ * measure and check the real loop.
+ *
+ * Sensors, input and drive output always run. Recording is normal and display
+ * best effort work, shed when the loop runs long. Does not allocate.
+ */
+
+class DriveLoop
+{
+	// Where the driver's input comes from each tick.
+
+	interface Input
+	{
+		// Poll buttons and switches, running any event listeners on this thread.
+		void poll();
+
+		double getLeftY();
+
+		double getRightY();
+
+		double getLeftX();
+
+		double getRightX();
+
+		double getUtilityX();
+	}
+
+	private final Input			input;
+	private final LoadShedder	shedder;
+	private final TeleopDrive	teleopDrive;
+
+	// Input to drive latency tracing, switched on the dashboard.
+	private final LatencyTracer	tracer;
+	private final int			stickPath;
+
+	// Drive stick shaping, one pipeline per axis as slew limits keep state.
+	private final InputShaper	rightYShaper, leftYShaper, rightXShaper, leftXShaper;
+
+	// Driving loop state carried between ticks.
+	private double				rightY = 0, leftY = 0, utilX = 0, rightX = 0, leftX = 0;
+	private double				rawRightY, rawLeftY, rawRightX, rawLeftX;
+	private boolean				autoTarget, altDriveMode;
+	private final NavXSampler	navxSampler = NavXSampler.getInstance();
+	private final NavXSampler.Snapshot	navx = new NavXSampler.Snapshot();
+	private final TalonStatusSampler.Snapshot	talonStatus = new TalonStatusSampler.Snapshot();
+	private final FlightRecorder.Record	record = new FlightRecorder.Record();
+
+	// Preallocated LCD line formatters, refreshed at 10hz independent of the loop rate.
+	private final LCDLine		lcdSticks = new LCDLine(4, 60, .100), lcdAngle = new LCDLine(5, 60, .100);
+	private final LCDLine		lcdNavx = new LCDLine(6, 60, .100), lcdPressure = new LCDLine(8, 60, .100);
+
+	/**
+	 * @param input Driver input.
+	 * @param shedder Load shedder of the control loop running the ticks.
+	 * @param teleopDrive Drive decisions.
+	 * @param tracer Latency tracer, stamped at stick read.
+	 * @param stickPath Tracer path of the sticks.
+	 * @param properties Robot properties, for stick shaping.
+	 * @param period Control loop period in seconds.
+	 */
+
+	DriveLoop(Input input, LoadShedder shedder, TeleopDrive teleopDrive, LatencyTracer tracer, int stickPath,
+			Properties properties, double period)
+	{
+		this.input = input;
+		this.shedder = shedder;
+		this.teleopDrive = teleopDrive;
+		this.tracer = tracer;
+		this.stickPath = stickPath;
+
+		rightYShaper = InputShaper.fromProperties(properties, "DriveStick", period);
+		leftYShaper = InputShaper.fromProperties(properties, "DriveStick", period);
+		rightXShaper = InputShaper.fromProperties(properties, "DriveStick", period);
+		leftXShaper = InputShaper.fromProperties(properties, "DriveStick", period);
+	}
+
+	boolean isAltDriveMode()
+	{
+		return altDriveMode;
+	}
+
+	void setAltDriveMode(boolean altDriveMode)
+	{
+		this.altDriveMode = altDriveMode;
+	}
+
+	// Shaped stick values of the last tick.
+
+	double getLeftY()
+	{
+		return leftY;
+	}
+
+	double getRightY()
+	{
+		return rightY;
+	}
+
+	// Auto target has the drive, sticks are not driven.
+
+	void setAutoTarget(boolean autoTarget)
+	{
+		this.autoTarget = autoTarget;
+	}
+
+	// One pass of the driving loop. Called by the control loop scheduler every 20ms.
+
+	void tick()
+	{
+		FlightRecorder	recorder;
+
+		// Take one NavX sample for this tick. All NavX values used below come from it.
+
+		navxSampler.capture();
+		navxSampler.read(navx);
+
+		// Poll buttons and switches, running any event listeners on this thread.
+
+		input.poll();
+
+		tracer.check();
+
+		// Get joystick deflection and feed to robot drive object.
+
+		if (tracer.isEnabled()) tracer.stamp(stickPath, Hardware.getTime());
+
+		rawRightY = input.getRightY();	// fwd/back
+		rawLeftY = input.getLeftY();	// fwd/back
+
+		rawRightX = input.getRightX();	// left/right
+		rawLeftX = input.getLeftX();	// left/right
+
+		rightY = rightYShaper.apply(rawRightY);
+		leftY = leftYShaper.apply(rawLeftY);
+
+		rightX = rightXShaper.apply(rawRightX);
+		leftX = leftXShaper.apply(rawLeftX);
+
+		utilX = input.getUtilityX();
+
+		tracer.mark(stickPath, LatencyTracer.SHAPE);
+
+		if (shedder.allow(LoadShedder.BEST_EFFORT))
+		{
+			if (lcdSticks.isDue())
+				lcdSticks.begin().add("leftY=").add(leftY, 4).add("  rightY=").add(rightY, 4).add("  utilX=").add(utilX, 4).print();
+
+			if (lcdNavx.isDue())
+				lcdNavx.begin().add("yaw=").add(navx.yaw, 2).add(", total=").add(navx.totalYaw, 2)
+					.add(", rate=").add(navx.yawRate, 2).add(", hdng=").add(navx.heading, 2).print();
+
+			if (Hardware.pressure != null && lcdPressure.isDue())
+				lcdPressure.begin().add("pressureV=").add(Hardware.pressure.getVoltage(), 2)
+					.add("  psi=").add(Hardware.pressure.getPressure(), 0).print();
+		}
+
+		// Set wheel motors.
+		// Do not feed JS input to robotDrive if we are controlling the motors in automatic functions.
+
+		// Two drive modes, full tank and alternate. Switch on right stick trigger.
+
+		if (!autoTarget) teleopDrive.drive(leftY, rightY, altDriveMode);
+
+		if (shedder.allow(LoadShedder.BEST_EFFORT))
+		{
+			if (teleopDrive.isSteeringAssist() && lcdAngle.isDue())
+				lcdAngle.begin().add("angle=").add(navx.yaw, 2).print();
+
+			// Update the robot heading indicator on the DS.
+
+			Telemetry.setNumber(Telemetry.GYRO, navx.heading);
+
+			// Total drive motor current from the background Talon sampler, no CAN reads here.
+
+			TalonStatusSampler.getInstance().read(talonStatus);
+
+			Telemetry.setNumber(Telemetry.DRIVE_CURRENT, talonStatus.getTotalCurrent());
+			Telemetry.setNumber(Telemetry.CAN_UTILIZATION, talonStatus.canUtilization);
+		}
+
+		// Record this tick's sticks, NavX, drive outputs and current.
+
+		recorder = FlightRecorder.getInstance();
+
+		if (recorder == null || !shedder.allow(LoadShedder.NORMAL)) return;
+
+		record.sample();
+		record.mode = FlightRecorder.TELEOP;
+		record.flags = (byte) ((altDriveMode ? FlightRecorder.ALT_DRIVE_MODE : 0) |
+				(teleopDrive.isSteeringAssist() ? FlightRecorder.STEERING_ASSIST : 0) |
+				(autoTarget ? FlightRecorder.AUTO_TARGET : 0) |
+				(teleopDrive.isClosedLoop() ? FlightRecorder.CLOSED_LOOP : 0));
+		record.rawLeftY = (float) rawLeftY;
+		record.rawRightY = (float) rawRightY;
+		record.rawLeftX = (float) rawLeftX;
+		record.rawRightX = (float) rawRightX;
+		record.leftY = (float) leftY;
+		record.rightY = (float) rightY;
+
+		recorder.write(record);
+	}
+}
@@ -0,0 +1,49 @@
+package Team4450.Robot11;
+
+// Command that drives a motion profile with a DriveProfileFollower.
+
+public class DriveProfileCommand extends Command
+{
+	private final DriveProfileFollower	follower;
+	private final MotionProfile			profile;
+	private final boolean				turn;
+	private boolean						finished;
+
+	/**
+	 * @param follower Follower to drive with. Commands may share one follower as
+	 * long as they do not run at the same time.
+	 * @param profile Profile to follow.
+	 * @param turn True to turn in place, false to drive straight.
+	 */
+
+	public DriveProfileCommand(DriveProfileFollower follower, MotionProfile profile, boolean turn)
+	{
+		super(String.format(turn ? "Turn %.1f" : "Drive %.1f", profile.distance));
+
+		this.follower = follower;
+		this.profile = profile;
+		this.turn = turn;
+	}
+
+	protected void initialize()
+	{
+		finished = false;
+
+		follower.start(profile, turn);
+	}
+
+	protected void execute()
+	{
+		finished = follower.tick();
+	}
+
+	protected boolean isFinished()
+	{
+		return finished;
+	}
+
+	protected void end(boolean interrupted)
+	{
+		follower.stop();
+	}
+}
@@ -0,0 +1,137 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+
+import Team4450.Lib.Util;
+
+/**
+ * Follows a MotionProfile with the differential drive using feedforward
+ * (kV * velocity + kA * acceleration + kS) plus proportional feedback on the
+ * encoder position error of each side. For straight moves both sides follow the
+ * profile and NavX yaw is held with proportional correction. For turns in place
+ * the profile is the arc length each wheel travels, left forward and right back.
+ * The profile sample is picked from elapsed time so late ticks do not stretch the
+ * move. tick() does not allocate.
+ */
+
+public class DriveProfileFollower
+{
+	private final double	kV, kA, kS, kP, kHeading, positionTolerance, settleTime;
+
+	private final NavXSampler			navxSampler = NavXSampler.getInstance();
+	private final NavXSampler.Snapshot	navx = new NavXSampler.Snapshot();
+
+	private MotionProfile	profile;
+	private boolean			turn, finished;
+	private long			startUs;
+	private double			leftStart, rightStart, leftError, rightError;
+
+	/**
+	 * Create follower with gains from Robot.properties: ProfileKV, ProfileKA,
+	 * ProfileKS, ProfileKP, ProfileKHeading, ProfileTolerance (inches) and
+	 * ProfileSettleTime (seconds allowed past the profile end to reach tolerance).
+	 */
+
+	public DriveProfileFollower(Properties properties)
+	{
+		kV = RobotProperties.getDouble(properties, "ProfileKV", 1.0 / 150);
+		kA = RobotProperties.getDouble(properties, "ProfileKA", 0);
+		kS = RobotProperties.getDouble(properties, "ProfileKS", 0);
+		kP = RobotProperties.getDouble(properties, "ProfileKP", .02);
+		kHeading = RobotProperties.getDouble(properties, "ProfileKHeading", .01);
+		positionTolerance = RobotProperties.getDouble(properties, "ProfileTolerance", 1);
+		settleTime = RobotProperties.getDouble(properties, "ProfileSettleTime", .5);
+	}
+
+	/**
+	 * Start following a profile.
+	 * @param profile Profile in encoder inches (+ is the + power direction).
+	 * @param turn True to turn in place: left side follows the profile, right side
+	 * follows its negative. False to drive straight holding the current yaw.
+	 */
+
+	public void start(MotionProfile profile, boolean turn)
+	{
+		Util.consoleLog("distance=%.1f duration=%.2f turn=%b", profile.distance, profile.getDuration(), turn);
+
+		this.profile = profile;
+		this.turn = turn;
+
+		finished = false;
+
+		leftStart = Hardware.drive.getLeftDistance();
+		rightStart = Hardware.drive.getRightDistance();
+
+		navxSampler.resetYaw();
+
+		startUs = Hardware.getTime();
+	}
+
+	/**
+	 * Run one control step. Call every control loop tick after start().
+	 * @return True when the profile is finished.
+	 */
+
+	public boolean tick()
+	{
+		int		index;
+		double	elapsed, position, velocity, acceleration, feedForward, left, right, correction = 0;
+
+		if (finished) return true;
+
+		elapsed = (Hardware.getTime() - startUs) / 1000000.0;
+
+		index = (int) (elapsed / profile.dt);
+
+		if (index >= profile.count) index = profile.count - 1;
+
+		position = profile.position[index];
+		velocity = profile.velocity[index];
+		acceleration = profile.acceleration[index];
+
+		feedForward = kV * velocity + kA * acceleration + (velocity == 0 ? 0 : Math.copySign(kS, velocity));
+
+		leftError = position - (Hardware.drive.getLeftDistance() - leftStart);
+		rightError = (turn ? -position : position) - (Hardware.drive.getRightDistance() - rightStart);
+
+		if (!turn)
+		{
+			navxSampler.capture();
+			navxSampler.read(navx);
+
+			// + yaw comes from the right side pulling ahead, so + correction speeds up
+			// the right side and - yaw speeds up the left, turning back to yaw 0.
+
+			correction = -navx.yaw * kHeading;
+		}
+
+		left = feedForward + kP * leftError - correction;
+		right = (turn ? -feedForward : feedForward) + kP * rightError + correction;
+
+		if (index == profile.count - 1 &&
+			((Math.abs(leftError) <= positionTolerance && Math.abs(rightError) <= positionTolerance) ||
+			 elapsed > profile.getDuration() + settleTime))
+		{
+			stop();
+			return true;
+		}
+
+		Hardware.drive.tankDrive(left, right, false);
+
+		return false;
+	}
+
+	public void stop()
+	{
+		if (!finished) Util.consoleLog("left error=%.2f right error=%.2f", leftError, rightError);
+
+		finished = true;
+
+		Hardware.drive.tankDrive(0, 0, false);
+	}
+
+	public boolean isFinished()
+	{
+		return finished;
+	}
+}
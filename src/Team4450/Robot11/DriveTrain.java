@@ -0,0 +1,26 @@
+package Team4450.Robot11;
+
+/**
+ * Differential drive as seen by the control code: open loop power commands with
+ * the WPILib DifferentialDrive semantics, and the drive encoder distances.
+ * Powers and distances are + in the + power direction.
+ */
+
+public interface DriveTrain
+{
+	void tankDrive(double leftPower, double rightPower, boolean squaredInputs);
+
+	void curvatureDrive(double speed, double rotation, boolean quickTurn);
+
+	// Left and right encoder distances in inches.
+
+	double getLeftDistance();
+
+	double getRightDistance();
+
+	// Last power commanded on each side after the drive math, + in the + power direction.
+
+	double getLeftPower();
+
+	double getRightPower();
+}
@@ -0,0 +1,311 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+
+/**
+ * Physics model of the six CIM differential drive, used as the DriveTrain by
+ * the Simulator. Each side's three motors are modeled from the CIM curve (stall
+ * torque, stall current, free speed) through the gearbox to the wheels, driving
+ * the robot's mass and rotational inertia against rolling resistance and skid
+ * steer turning scrub. Motor voltage is the commanded power times the battery
+ * voltage, which sags with total current through the battery resistance.
+ *
+ * Powers follow WPILib DifferentialDrive (2018) tank and curvature drive math.
+ * Encoder distances and the pose are + in the + power direction, which is
+ * backwards on this robot. Heading is + clockwise like the NavX.
+ *
+ * All parameters come from Sim* entries in Robot.properties with defaults for
+ * the competition robot.
+ */
+
+public class DrivetrainSim implements DriveTrain
+{
+	// CIM motor at 12 volts.
+	private static final double	STALL_TORQUE = 2.42, STALL_CURRENT = 133, FREE_CURRENT = 2.7;
+	private static final double	FREE_SPEED = 5310 * 2 * Math.PI / 60, NOMINAL_VOLTAGE = 12;
+	private static final double	RESISTANCE = NOMINAL_VOLTAGE / STALL_CURRENT, KT = STALL_TORQUE / STALL_CURRENT;
+	private static final double	KV = (NOMINAL_VOLTAGE - FREE_CURRENT * RESISTANCE) / FREE_SPEED;
+
+	private static final double	METERS_PER_INCH = .0254, KG_PER_POUND = .4536, GRAVITY = 9.81;
+
+	// DifferentialDrive defaults.
+	private static final double	DEADBAND = .02, QUICK_STOP_THRESHOLD = .2, QUICK_STOP_ALPHA = .1;
+
+	private final double		motorsPerSide, gearRatio, wheelRadius, trackWidth, mass, inertia, efficiency;
+	private final double		leftFactor, rollingResistance, turnScrub, maxForce, batteryVoltage;
+	private final double		batteryResistance;
+	private final boolean		brakeMode;
+
+	private double				leftPower, rightPower, quickStopAccumulator;
+
+	// State. Velocity in m/s, yaw rate in rad/s clockwise, pose and distances in inches.
+	private double				velocity, yawRate, x, y, heading, leftDistance, rightDistance;
+	private double				leftCurrent, rightCurrent, loadCurrent, busVoltage;
+
+	public DrivetrainSim(Properties properties)
+	{
+		motorsPerSide = RobotProperties.getDouble(properties, "SimMotorsPerSide", 3);
+		gearRatio = RobotProperties.getDouble(properties, "SimGearRatio", 10.71);
+		wheelRadius = RobotProperties.getDouble(properties, "SimWheelDiameter", 6) / 2 * METERS_PER_INCH;
+		trackWidth = RobotProperties.getDouble(properties, "DriveTrackWidth", 24) * METERS_PER_INCH;
+		mass = RobotProperties.getDouble(properties, "SimRobotWeight", 120) * KG_PER_POUND;
+		inertia = RobotProperties.getDouble(properties, "SimMomentOfInertia", 6);
+		efficiency = RobotProperties.getDouble(properties, "SimGearboxEfficiency", .85);
+		leftFactor = RobotProperties.getDouble(properties, "SimLeftSideFactor", 1);
+		rollingResistance = RobotProperties.getDouble(properties, "SimRollingResistance", 20);
+		turnScrub = RobotProperties.getDouble(properties, "SimTurnScrub", 30);
+		maxForce = RobotProperties.getDouble(properties, "SimWheelFriction", 1.1) * mass * GRAVITY / 2;
+		batteryVoltage = RobotProperties.getDouble(properties, "SimBatteryVoltage", 12.7);
+		batteryResistance = RobotProperties.getDouble(properties, "SimBatteryResistance", .02);
+		brakeMode = RobotProperties.getBoolean(properties, "SimBrakeMode", true);
+
+		busVoltage = batteryVoltage;
+	}
+
+	/**
+	 * Advance the physics.
+	 * @param dt Time step in seconds, 1ms or less for a stable result.
+	 */
+
+	public void step(double dt)
+	{
+		double	leftVelocity = velocity - yawRate * trackWidth / 2, rightVelocity = velocity + yawRate * trackWidth / 2;
+		double	leftForce, rightForce, acceleration, angularAcceleration, distance, turn;
+
+		busVoltage = busVoltage(leftVelocity, rightVelocity);
+
+		leftCurrent = motorCurrent(leftPower, leftVelocity);
+		rightCurrent = motorCurrent(rightPower, rightVelocity);
+
+		leftForce = wheelForce(leftCurrent) * leftFactor;
+		rightForce = wheelForce(rightCurrent);
+
+		// Rolling resistance and turning scrub oppose motion, smoothed through 0 so
+		// the robot settles instead of chattering.
+
+		acceleration = (leftForce + rightForce - rollingResistance * Math.tanh(velocity / .05)) / mass;
+		angularAcceleration = ((rightForce - leftForce) * trackWidth / 2 - turnScrub * Math.tanh(yawRate / .1))
+				/ inertia;
+
+		velocity += acceleration * dt;
+		yawRate += angularAcceleration * dt;
+
+		leftVelocity = velocity - yawRate * trackWidth / 2;
+		rightVelocity = velocity + yawRate * trackWidth / 2;
+
+		distance = velocity * dt / METERS_PER_INCH;
+		turn = Math.toDegrees(yawRate * dt);
+
+		x += distance * Math.cos(Math.toRadians(heading + turn / 2));
+		y += distance * Math.sin(Math.toRadians(heading + turn / 2));
+		heading += turn;
+
+		leftDistance += leftVelocity * dt / METERS_PER_INCH;
+		rightDistance += rightVelocity * dt / METERS_PER_INCH;
+	}
+
+	// Bus voltage with the battery sag from the current it causes. A Talon draws
+	// its motor current times its output fraction from the battery, negative when
+	// regenerating. Motor current in turn depends on bus voltage, and with six CIMs
+	// that feedback has a gain over 1, so solve for the voltage instead of using the
+	// last step's voltage.
+
+	private double busVoltage(double leftVelocity, double rightVelocity)
+	{
+		double	gain = batteryResistance * motorsPerSide / RESISTANCE;
+		double	leftBack = KV * leftVelocity / wheelRadius * gearRatio;
+		double	rightBack = KV * rightVelocity / wheelRadius * gearRatio;
+		double	voltage = (batteryVoltage - batteryResistance * loadCurrent +
+				gain * (leftPower * leftBack + rightPower * rightBack)) /
+				(1 + gain * (leftPower * leftPower + rightPower * rightPower));
+
+		return Math.max(0, voltage);
+	}
+
+	// Current in one motor of a side. Coast mode lets a side with no power spin
+	// freely, brake mode shorts the motors.
+
+	private double motorCurrent(double power, double wheelVelocity)
+	{
+		double	motorSpeed = wheelVelocity / wheelRadius * gearRatio;
+
+		if (power == 0 && !brakeMode) return 0;
+
+		return (power * busVoltage - KV * motorSpeed) / RESISTANCE;
+	}
+
+	// Wheel force for a side from motor current, limited by traction.
+
+	private double wheelForce(double current)
+	{
+		double	force = motorsPerSide * KT * current * gearRatio * efficiency / wheelRadius;
+
+		return Math.max(-maxForce, Math.min(maxForce, force));
+	}
+
+	public void tankDrive(double leftPower, double rightPower, boolean squaredInputs)
+	{
+		leftPower = applyDeadband(limit(leftPower));
+		rightPower = applyDeadband(limit(rightPower));
+
+		if (squaredInputs)
+		{
+			leftPower = Math.copySign(leftPower * leftPower, leftPower);
+			rightPower = Math.copySign(rightPower * rightPower, rightPower);
+		}
+
+		this.leftPower = leftPower;
+		this.rightPower = rightPower;
+	}
+
+	public void curvatureDrive(double speed, double rotation, boolean quickTurn)
+	{
+		double	angularPower, left, right, maxMagnitude;
+		boolean	overPower;
+
+		speed = applyDeadband(limit(speed));
+		rotation = applyDeadband(limit(rotation));
+
+		if (quickTurn)
+		{
+			if (Math.abs(speed) < QUICK_STOP_THRESHOLD)
+				quickStopAccumulator = (1 - QUICK_STOP_ALPHA) * quickStopAccumulator +
+						QUICK_STOP_ALPHA * limit(rotation) * 2;
+
+			overPower = true;
+			angularPower = rotation;
+		}
+		else
+		{
+			overPower = false;
+			angularPower = Math.abs(speed) * rotation - quickStopAccumulator;
+
+			if (quickStopAccumulator > 1)
+				quickStopAccumulator -= 1;
+			else if (quickStopAccumulator < -1)
+				quickStopAccumulator += 1;
+			else
+				quickStopAccumulator = 0;
+		}
+
+		left = speed + angularPower;
+		right = speed - angularPower;
+
+		if (overPower)
+		{
+			if (left > 1)
+			{
+				right -= left - 1;
+				left = 1;
+			}
+			else if (right > 1)
+			{
+				left -= right - 1;
+				right = 1;
+			}
+			else if (left < -1)
+			{
+				right -= left + 1;
+				left = -1;
+			}
+			else if (right < -1)
+			{
+				left -= right + 1;
+				right = -1;
+			}
+		}
+
+		maxMagnitude = Math.max(Math.abs(left), Math.abs(right));
+
+		if (maxMagnitude > 1)
+		{
+			left /= maxMagnitude;
+			right /= maxMagnitude;
+		}
+
+		leftPower = left;
+		rightPower = right;
+	}
+
+	private static double limit(double value)
+	{
+		return Math.max(-1, Math.min(1, value));
+	}
+
+	private static double applyDeadband(double value)
+	{
+		if (Math.abs(value) <= DEADBAND) return 0;
+
+		return value > 0 ? (value - DEADBAND) / (1 - DEADBAND) : (value + DEADBAND) / (1 - DEADBAND);
+	}
+
+	public double getLeftDistance()
+	{
+		return leftDistance;
+	}
+
+	public double getRightDistance()
+	{
+		return rightDistance;
+	}
+
+	// Add current drawn from the battery by other devices, like the compressor.
+
+	public void setLoadCurrent(double amps)
+	{
+		loadCurrent = amps;
+	}
+
+	// Battery current in amps: drive motors plus other loads.
+
+	public double getTotalCurrent()
+	{
+		return (leftPower * leftCurrent + rightPower * rightCurrent) * motorsPerSide + loadCurrent;
+	}
+
+	public double getBusVoltage()
+	{
+		return busVoltage;
+	}
+
+	// Ground truth pose. Inches and degrees + clockwise, + x is the + power direction.
+
+	public double getX()
+	{
+		return x;
+	}
+
+	public double getY()
+	{
+		return y;
+	}
+
+	public double getHeading()
+	{
+		return heading;
+	}
+
+	// Yaw rate in degrees per second, + clockwise.
+
+	public double getYawRate()
+	{
+		return Math.toDegrees(yawRate);
+	}
+
+	// Speed in inches per second, + in the + power direction.
+
+	public double getVelocity()
+	{
+		return velocity / METERS_PER_INCH;
+	}
+
+	public double getLeftPower()
+	{
+		return leftPower;
+	}
+
+	public double getRightPower()
+	{
+		return rightPower;
+	}
+}
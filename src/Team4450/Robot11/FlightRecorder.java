@@ -0,0 +1,510 @@
+package Team4450.Robot11;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+
+import Team4450.Lib.Util;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Binary flight recorder. Each control loop tick of Teleop and Autonomous writes
+ * one fixed size record (inputs, NavX, encoders, drive outputs, current, pose)
+ * into a preallocated memory mapped ring file, one file per match named from the
+ * event name, match type and match number. Writing a record is a few stores into the mapped
+ * buffer: no allocation, no formatting and no file system calls, the kernel
+ * writes the pages back to disk on its own. When the ring is full the oldest
+ * records are overwritten. The file is forced to disk at the end of each mode.
+ *
+ * A file is created, zero filled (so no disk blocks are allocated during the
+ * match) and mapped by open(), never in the loop. The robot opens the match's
+ * file from the monitor thread while disabled, as soon as the DS reports the
+ * match, so autonomous does not wait for it. Mode start opens it again in case,
+ * which does nothing when it is already open. Opening the same match again
+ * (auto then teleop, or after a reboot) continues the same file. Only the
+ * newest FlightRecorderFiles files are kept.
+ *
+ * File layout, little endian: a HEADER_SIZE byte header then capacity records of
+ * RECORD_SIZE bytes. Header: magic long, version int, record size int, capacity
+ * int, next record index int, records written long, match number int, auto
+ * program int, alliance byte, location byte, match type byte, 5 bytes padding, game message
+ * (GAME_MESSAGE_SIZE ASCII bytes), event name (EVENT_NAME_SIZE ASCII bytes).
+ * Records are laid out by Record.put().
+ *
+ * read() loads a recording for Replay. Decode a file to CSV on a development
+ * machine with:
+ *   java Team4450.Robot11.FlightRecorder file.rec > file.csv
+ */
+
+public class FlightRecorder
+{
+	// One tick of data. Preallocate one per mode, fill it and pass it to write().
+
+	public static class Record
+	{
+		public long		timeUs;
+		public int		sequence;
+		public byte		mode, flags;
+
+		// Sticks as read and the drive sticks after shaping.
+		public float	rawLeftY, rawRightY, rawLeftX, rawRightX, leftY, rightY;
+
+		public float	yaw, yawRate, totalYaw, leftDistance, rightDistance, leftPower, rightPower;
+		public float	current, pressure, x, y, heading;
+
+		private final NavXSampler.Snapshot			navx = new NavXSampler.Snapshot();
+		private final TalonStatusSampler.Snapshot	talonStatus = new TalonStatusSampler.Snapshot();
+		private final Odometry.Snapshot				pose = new Odometry.Snapshot();
+
+		// Fill in time and the sensor and output fields from the samplers and Hardware.
+		// Mode, flags and sticks are up to the caller.
+
+		public void sample()
+		{
+			timeUs = Hardware.getTime();
+
+			NavXSampler.getInstance().read(navx);
+
+			yaw = (float) navx.yaw;
+			yawRate = (float) navx.yawRate;
+			totalYaw = (float) navx.totalYaw;
+
+			leftDistance = (float) Hardware.drive.getLeftDistance();
+			rightDistance = (float) Hardware.drive.getRightDistance();
+			leftPower = (float) Hardware.drive.getLeftPower();
+			rightPower = (float) Hardware.drive.getRightPower();
+
+			TalonStatusSampler.getInstance().read(talonStatus);
+
+			current = (float) talonStatus.getTotalCurrent();
+			pressure = Hardware.pressure != null ? (float) Hardware.pressure.getPressure() : 0;
+
+			if (Odometry.getInstance() != null)
+			{
+				Odometry.getInstance().read(pose);
+
+				x = (float) pose.x;
+				y = (float) pose.y;
+				heading = (float) pose.heading;
+			}
+		}
+
+		// Store the record at offset: time long, sequence int, mode and flags bytes,
+		// 2 bytes padding, then the floats in field order from offset + 16.
+
+		void put(ByteBuffer buffer, int offset)
+		{
+			buffer.putLong(offset, timeUs);
+			buffer.putInt(offset + 8, sequence);
+			buffer.put(offset + 12, mode);
+			buffer.put(offset + 13, flags);
+			buffer.putFloat(offset + 16, rawLeftY);
+			buffer.putFloat(offset + 20, rawRightY);
+			buffer.putFloat(offset + 24, rawLeftX);
+			buffer.putFloat(offset + 28, rawRightX);
+			buffer.putFloat(offset + 32, leftY);
+			buffer.putFloat(offset + 36, rightY);
+			buffer.putFloat(offset + 40, yaw);
+			buffer.putFloat(offset + 44, yawRate);
+			buffer.putFloat(offset + 48, totalYaw);
+			buffer.putFloat(offset + 52, leftDistance);
+			buffer.putFloat(offset + 56, rightDistance);
+			buffer.putFloat(offset + 60, leftPower);
+			buffer.putFloat(offset + 64, rightPower);
+			buffer.putFloat(offset + 68, current);
+			buffer.putFloat(offset + 72, pressure);
+			buffer.putFloat(offset + 76, x);
+			buffer.putFloat(offset + 80, y);
+			buffer.putFloat(offset + 84, heading);
+		}
+
+		// Load the record from offset.
+
+		void get(ByteBuffer buffer, int offset)
+		{
+			timeUs = buffer.getLong(offset);
+			sequence = buffer.getInt(offset + 8);
+			mode = buffer.get(offset + 12);
+			flags = buffer.get(offset + 13);
+			rawLeftY = buffer.getFloat(offset + 16);
+			rawRightY = buffer.getFloat(offset + 20);
+			rawLeftX = buffer.getFloat(offset + 24);
+			rawRightX = buffer.getFloat(offset + 28);
+			leftY = buffer.getFloat(offset + 32);
+			rightY = buffer.getFloat(offset + 36);
+			yaw = buffer.getFloat(offset + 40);
+			yawRate = buffer.getFloat(offset + 44);
+			totalYaw = buffer.getFloat(offset + 48);
+			leftDistance = buffer.getFloat(offset + 52);
+			rightDistance = buffer.getFloat(offset + 56);
+			leftPower = buffer.getFloat(offset + 60);
+			rightPower = buffer.getFloat(offset + 64);
+			current = buffer.getFloat(offset + 68);
+			pressure = buffer.getFloat(offset + 72);
+			x = buffer.getFloat(offset + 76);
+			y = buffer.getFloat(offset + 80);
+			heading = buffer.getFloat(offset + 84);
+		}
+	}
+
+	// A recording loaded by read(), records oldest first. Program is -1 and
+	// alliance null if autonomous did not run.
+
+	public static class Recording
+	{
+		public String					eventName, gameMessage;
+		public int						matchNumber, program, location;
+		public DriverStation.Alliance	alliance;
+		public DriverStation.MatchType	matchType;
+		public Record[]					records;
+	}
+
+	public static final byte	AUTONOMOUS = 1, TELEOP = 2;
+
+	// Record flags.
+	public static final byte	ALT_DRIVE_MODE = 1, STEERING_ASSIST = 2, AUTO_TARGET = 4, CLOSED_LOOP = 8;
+
+	public static final int		HEADER_SIZE = 128, RECORD_SIZE = 96, GAME_MESSAGE_SIZE = 16, EVENT_NAME_SIZE = 32;
+
+	private static final long	MAGIC = 0x3035344c52464c46L;	// FLFRL450 little endian.
+	private static final int	VERSION = 2;
+	private static final int	NEXT_OFFSET = 20, WRITTEN_OFFSET = 24, MATCH_OFFSET = 32, PROGRAM_OFFSET = 36;
+	private static final int	ALLIANCE_OFFSET = 40, LOCATION_OFFSET = 41, MATCH_TYPE_OFFSET = 42;
+	private static final int	GAME_MESSAGE_OFFSET = 48, EVENT_OFFSET = 64;
+
+	// This variable and method make sure this class is a singleton.
+
+	private static FlightRecorder	recorder = null;
+
+	public static FlightRecorder getInstance(Properties properties)
+	{
+		if (recorder == null) recorder = new FlightRecorder(properties);
+
+		return recorder;
+	}
+
+	public static FlightRecorder getInstance()
+	{
+		return recorder;
+	}
+
+	// This is the rest of the class.
+
+	private final File				directory;
+	private final int				capacity, maxFiles;
+	private final boolean			enabled;
+
+	private volatile MappedByteBuffer	buffer;
+	private String					fileName;
+	private int						next, sequence;
+	private long					written;
+
+	private FlightRecorder(Properties properties)
+	{
+		directory = new File(RobotProperties.getString(properties, "FlightRecorderDirectory", "/home/lvuser/flight"));
+		enabled = RobotProperties.getBoolean(properties, "FlightRecorder", true);
+		capacity = RobotProperties.getInt(properties, "FlightRecorderRecords", 16384);
+		maxFiles = RobotProperties.getInt(properties, "FlightRecorderFiles", 20);
+
+		Util.consoleLog("enabled=%b dir=%s records=%d files=%d", enabled, directory, capacity, maxFiles);
+	}
+
+	/**
+	 * Open the ring file for a match, closing any other match's file. Does
+	 * nothing if the match's file is already open. Call while disabled or at the
+	 * start of a mode, not while another thread is writing.
+	 * @param eventName FMS event name, empty when not on the FMS.
+	 * @param matchType FMS match type, None when not on the FMS.
+	 * @param matchNumber FMS match number, 0 when not on the FMS.
+	 */
+
+	public synchronized void open(String eventName, DriverStation.MatchType matchType, int matchNumber)
+	{
+		String	name = fileName(eventName, matchType, matchNumber);
+		File	file = new File(directory, name);
+
+		if (!enabled || name.equals(fileName)) return;
+
+		close();
+
+		try
+		{
+			if (!directory.isDirectory() && !directory.mkdirs())
+				throw new IOException("Can't create " + directory);
+
+			buffer = map(file, eventName, matchType, matchNumber);
+			fileName = name;
+			sequence = (int) written;
+
+			deleteOldFiles();
+
+			Util.consoleLog("%s next=%d written=%d", file, next, written);
+		}
+		catch (Exception e)
+		{
+			buffer = null;
+			fileName = null;
+
+			Util.logException(e);
+		}
+	}
+
+	// Map the file, creating and zero filling it if it is new or not a ring file
+	// of the current format.
+
+	private MappedByteBuffer map(File file, String eventName, DriverStation.MatchType matchType, int matchNumber)
+			throws IOException
+	{
+		long				size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+		RandomAccessFile	raf = new RandomAccessFile(file, "rw");
+		MappedByteBuffer	map;
+
+		try
+		{
+			// A file of another size is from a different configuration, start it over.
+
+			if (raf.length() != size) raf.setLength(0);
+
+			raf.setLength(size);
+
+			map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			map.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		finally
+		{
+			raf.close();	// The mapping stays valid after the file is closed.
+		}
+
+		if (map.getLong(0) == MAGIC && map.getInt(8) == VERSION && map.getInt(12) == RECORD_SIZE &&
+			map.getInt(16) == capacity)
+		{
+			next = map.getInt(NEXT_OFFSET);
+			written = map.getLong(WRITTEN_OFFSET);
+
+			return map;
+		}
+
+		for (int i = 0; i < size; i += 8) map.putLong(i, 0);
+
+		map.putLong(0, MAGIC);
+		map.putInt(8, VERSION);
+		map.putInt(12, RECORD_SIZE);
+		map.putInt(16, capacity);
+		map.putInt(MATCH_OFFSET, matchNumber);
+		map.putInt(PROGRAM_OFFSET, -1);
+		map.put(ALLIANCE_OFFSET, (byte) -1);
+		map.put(MATCH_TYPE_OFFSET, (byte) (matchType == null ? 0 : matchType.ordinal()));
+
+		putString(map, EVENT_OFFSET, EVENT_NAME_SIZE, eventName);
+
+		next = 0;
+		written = 0;
+
+		return map;
+	}
+
+	private static void putString(ByteBuffer buffer, int offset, int size, String value) throws IOException
+	{
+		byte[]	bytes = (value == null ? "" : value).getBytes("US-ASCII");
+
+		for (int i = 0; i < size; i++) buffer.put(offset + i, i < bytes.length ? bytes[i] : 0);
+	}
+
+	private static String getString(ByteBuffer buffer, int offset, int size) throws IOException
+	{
+		byte[]	bytes = new byte[size];
+
+		for (int i = 0; i < size; i++) bytes[i] = buffer.get(offset + i);
+
+		return new String(bytes, "US-ASCII").trim();
+	}
+
+	private static String fileName(String eventName, DriverStation.MatchType matchType, int matchNumber)
+	{
+		String	event = eventName == null || eventName.trim().isEmpty() ? "nofms" : eventName.trim();
+
+		return event.replaceAll("[^A-Za-z0-9_-]", "_") + "-" + (matchType == null ? "None" : matchType.name()) + "-" +
+				matchNumber + ".rec";
+	}
+
+	// Keep only the newest maxFiles recordings.
+
+	private void deleteOldFiles()
+	{
+		File[]	files = directory.listFiles();
+		int		count = 0;
+
+		if (files == null) return;
+
+		Arrays.sort(files, new Comparator<File>()
+		{
+			public int compare(File a, File b) { return Long.compare(b.lastModified(), a.lastModified()); }
+		});
+
+		for (File file : files)
+			if (file.getName().endsWith(".rec") && ++count > maxFiles && !file.getName().equals(fileName))
+				file.delete();
+	}
+
+	public boolean isOpen()
+	{
+		return buffer != null;
+	}
+
+	/**
+	 * Save the autonomous plan inputs in the header so Replay can rebuild the
+	 * plan. Call after open() at the start of autonomous.
+	 * @param plan The plan autonomous is running.
+	 */
+
+	public void setAutoPlan(AutoPlan plan)
+	{
+		if (buffer == null) return;
+
+		try
+		{
+			buffer.putInt(PROGRAM_OFFSET, plan.program);
+			buffer.put(ALLIANCE_OFFSET, (byte) (plan.alliance == null ? -1 : plan.alliance.ordinal()));
+			buffer.put(LOCATION_OFFSET, (byte) plan.location);
+
+			putString(buffer, GAME_MESSAGE_OFFSET, GAME_MESSAGE_SIZE, plan.gameMessage);
+		}
+		catch (IOException e) {Util.logException(e);}
+	}
+
+	/**
+	 * Write a record into the ring. Sets its sequence number. Does nothing when
+	 * no file is open. Control thread only, does not allocate or block.
+	 * @param record Record to write.
+	 */
+
+	public void write(Record record)
+	{
+		MappedByteBuffer	map = buffer;
+
+		if (map == null) return;
+
+		record.sequence = sequence++;
+
+		record.put(map, HEADER_SIZE + next * RECORD_SIZE);
+
+		if (++next == capacity) next = 0;
+
+		written++;
+
+		map.putInt(NEXT_OFFSET, next);
+		map.putLong(WRITTEN_OFFSET, written);
+	}
+
+	/**
+	 * Force the records to disk. Blocks until written, call at the end of a mode,
+	 * not in the loop.
+	 */
+
+	public synchronized void flush()
+	{
+		long	start = System.nanoTime();
+
+		if (buffer == null) return;
+
+		buffer.force();
+
+		Util.consoleLog("%s written=%d force=%.1fms", fileName, written, (System.nanoTime() - start) / 1000000.0);
+	}
+
+	// Flush and stop recording to the current file.
+
+	public synchronized void close()
+	{
+		if (buffer == null) return;
+
+		flush();
+
+		buffer = null;
+		fileName = null;
+	}
+
+	/**
+	 * Load a recording, oldest record first.
+	 * @param fileName Ring file name.
+	 * @return The recording.
+	 */
+
+	public static Recording read(String fileName) throws IOException
+	{
+		RandomAccessFile	raf = new RandomAccessFile(fileName, "r");
+		Recording			recording = new Recording();
+		MappedByteBuffer	map;
+		int					capacity, next, count, alliance, matchType;
+
+		try
+		{
+			map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		finally
+		{
+			raf.close();
+		}
+
+		if (map.getLong(0) != MAGIC || map.getInt(8) != VERSION || map.getInt(12) != RECORD_SIZE)
+			throw new IOException(fileName + " is not a version " + VERSION + " flight recording");
+
+		capacity = map.getInt(16);
+		next = map.getInt(NEXT_OFFSET);
+		count = (int) Math.min(map.getLong(WRITTEN_OFFSET), capacity);
+		alliance = map.get(ALLIANCE_OFFSET);
+		matchType = map.get(MATCH_TYPE_OFFSET);
+
+		recording.eventName = getString(map, EVENT_OFFSET, EVENT_NAME_SIZE);
+		recording.gameMessage = getString(map, GAME_MESSAGE_OFFSET, GAME_MESSAGE_SIZE);
+		recording.matchNumber = map.getInt(MATCH_OFFSET);
+		recording.program = map.getInt(PROGRAM_OFFSET);
+		recording.location = map.get(LOCATION_OFFSET);
+		recording.alliance = alliance < 0 ? null : DriverStation.Alliance.values()[alliance];
+		recording.matchType = matchType < 0 || matchType >= DriverStation.MatchType.values().length ?
+				DriverStation.MatchType.None : DriverStation.MatchType.values()[matchType];
+		recording.records = new Record[count];
+
+		for (int i = 0; i < count; i++)
+		{
+			recording.records[i] = new Record();
+			recording.records[i].get(map, HEADER_SIZE + ((next - count + i + capacity) % capacity) * RECORD_SIZE);
+		}
+
+		return recording;
+	}
+
+	/**
+	 * Decode a ring file to CSV on standard output, oldest record first.
+	 * @param args Ring file name.
+	 */
+
+	public static void main(String[] args) throws IOException
+	{
+		Recording	recording = read(args[0]);
+		PrintStream	out = System.out;
+
+		out.println("# event=" + recording.eventName + " type=" + recording.matchType + " match=" +
+				recording.matchNumber + " program=" + recording.program + " alliance=" + recording.alliance +
+				" location=" + recording.location + " msg=" + recording.gameMessage + " records=" +
+				recording.records.length);
+		out.println("timeUs,sequence,mode,flags,rawLeftY,rawRightY,rawLeftX,rawRightX,leftY,rightY,yaw,yawRate," +
+				"totalYaw,leftDistance,rightDistance,leftPower,rightPower,current,pressure,x,y,heading");
+
+		for (Record r : recording.records)
+			out.println(r.timeUs + "," + r.sequence + "," + r.mode + "," + r.flags + "," + r.rawLeftY + "," +
+					r.rawRightY + "," + r.rawLeftX + "," + r.rawRightX + "," + r.leftY + "," + r.rightY + "," +
+					r.yaw + "," + r.yawRate + "," + r.totalYaw + "," + r.leftDistance + "," + r.rightDistance + "," +
+					r.leftPower + "," + r.rightPower + "," + r.current + "," + r.pressure + "," + r.x + "," + r.y +
+					"," + r.heading);
+	}
+}
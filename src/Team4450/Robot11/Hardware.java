@@ -0,0 +1,32 @@
+package Team4450.Robot11;
+
+/**
+ * The hardware control code runs against, behind interfaces so the same code
+ * runs on the robot or in the simulator. Robot code installs the robot backends
+ * as Devices creates the devices, the Simulator installs simulated ones.
+ * Control code reads drive, NavX, pressure and time through here instead of
+ * the device classes in Devices, and sleeps through here.
+ */
+
+public class Hardware
+{
+	public static DriveTrain		drive;
+	public static HeadingSensor		navx;
+	public static PressureSensor	pressure;
+	public static Clock				clock = Clock.FPGA;
+
+	// Current time in microseconds from the installed clock.
+
+	public static long getTime()
+	{
+		return clock.getTimeUs();
+	}
+
+	// Sleep the calling thread on the installed clock. Replaces Timer.delay() and
+	// Thread.sleep(): an interrupt ends the sleep and leaves the interrupt flag set.
+
+	public static void sleep(long us)
+	{
+		clock.sleepUs(us);
+	}
+}
@@ -0,0 +1,225 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+import java.util.concurrent.locks.LockSupport;
+
+import Team4450.Lib.Util;
+
+/**
+ * Heading hold controller running on its own thread, woken by each NavX update
+ * so it runs at the NavX update rate instead of the 50hz control loop rate. It
+ * uses the full resolution NavX yaw (no integer degrees) and a PIDFController.
+ * The drive loop reads the latest turn output from a lock free slot.
+ *
+ * Compute time per update goes into a latency histogram and tracking error is
+ * published to the dashboard and summarized in the log.
+ */
+
+public class HeadingController extends Thread
+{
+	// This variable and method make sure this class is a singleton.
+
+	private static HeadingController	controller = null;
+
+	public static HeadingController getInstance(Properties properties)
+	{
+		if (controller == null) controller = new HeadingController(properties);
+
+		return controller;
+	}
+
+	public static HeadingController getInstance()
+	{
+		return controller;
+	}
+
+	// This is the rest of the class.
+
+	private static final long			MAX_WAIT_NS = 50000000, PUBLISH_INTERVAL_US = 1000000;
+
+	private final PIDFController		pid;
+	private final NavXSampler			navxSampler = NavXSampler.getInstance();
+	private final NavXSampler.Snapshot	navx = new NavXSampler.Snapshot();
+	private final LatencyHistogram		computeTime = new LatencyHistogram("Heading PID Time");
+	private final int					errorKey = Telemetry.addNumber("HeadingError", .1);
+
+	// Lock free hand off to the drive loop.
+	private volatile double				output, target;
+	private volatile boolean			enabled, resetRequested;
+
+	// Tracking error statistics, only touched by the controller thread.
+	private double						errorSquaredSum, maxError;
+	private long						errorCount;
+	private volatile boolean			resetStatistics;
+
+	// Update state, only touched by the updating thread.
+	private int							lastSequence = -1;
+	private long						lastTimeUs, publishUs;
+
+	private HeadingController(Properties properties)
+	{
+		pid = new PIDFController(RobotProperties.getDouble(properties, "HeadingKP", .01),
+				RobotProperties.getDouble(properties, "HeadingKI", 0),
+				RobotProperties.getDouble(properties, "HeadingKD", 0), 0);
+
+		pid.setIntegralLimit(RobotProperties.getDouble(properties, "HeadingIntegralLimit", .2));
+		pid.setDerivativeFilter(RobotProperties.getDouble(properties, "HeadingDerivativeFilter", .5));
+		pid.setRampRate(RobotProperties.getDouble(properties, "HeadingRampRate", 0));
+		pid.setOutputRange(-1, 1);
+
+		Util.consoleLog();
+
+		setName("HeadingController");
+		setPriority(Thread.NORM_PRIORITY + 2);
+		setDaemon(true);
+	}
+
+	public void run()
+	{
+		final Thread	self = this;
+
+		Util.consoleLog();
+
+		// Wake up on every NavX update.
+
+		navxSampler.addUpdateListener(new Runnable()
+		{
+			public void run() { LockSupport.unpark(self); }
+		});
+
+		try
+		{
+			while (!isInterrupted())
+			{
+				LockSupport.parkNanos(MAX_WAIT_NS);
+
+				update();
+			}
+		}
+		catch (Throwable e) {Util.logException(e);}
+
+		Util.consoleLog("end");
+	}
+
+	/**
+	 * Run the PID on the latest NavX sample if it is new. Called by the controller
+	 * thread, and by the Simulator on each simulated NavX update.
+	 */
+
+	public void update()
+	{
+		long	startUs;
+		double	error;
+
+		navxSampler.read(navx);
+
+		if (navx.sequence == lastSequence) return;
+
+		lastSequence = navx.sequence;
+
+		if (!enabled)
+		{
+			output = 0;
+			lastTimeUs = 0;
+			return;
+		}
+
+		startUs = Hardware.getTime();
+
+		if (resetRequested)
+		{
+			resetRequested = false;
+			pid.setTarget(target);
+			pid.reset();
+			lastTimeUs = 0;
+		}
+
+		pid.setTarget(target);
+
+		// First sample after enable only primes the derivative.
+
+		output = pid.calculate(navx.yaw, lastTimeUs == 0 ? .005 : (navx.timeUs - lastTimeUs) / 1000000.0);
+
+		lastTimeUs = navx.timeUs;
+
+		error = pid.getError();
+
+		if (resetStatistics)
+		{
+			errorSquaredSum = maxError = 0;
+			errorCount = 0;
+			resetStatistics = false;
+		}
+
+		errorSquaredSum += error * error;
+		errorCount++;
+
+		if (Math.abs(error) > maxError) maxError = Math.abs(error);
+
+		computeTime.record(Hardware.getTime() - startUs);
+
+		if (startUs >= publishUs)
+		{
+			Telemetry.setNumber(errorKey, error);
+			computeTime.publish();
+			publishUs = startUs + PUBLISH_INTERVAL_US;
+		}
+	}
+
+	/**
+	 * Start holding a heading.
+	 * @param targetYaw NavX yaw to hold.
+	 */
+
+	public void enable(double targetYaw)
+	{
+		target = targetYaw;
+		output = 0;
+		resetRequested = true;
+		enabled = true;
+	}
+
+	public void disable()
+	{
+		enabled = false;
+		output = 0;
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	// Change the held yaw without resetting the controller. Ramps if a ramp rate is set.
+
+	public void setTarget(double targetYaw)
+	{
+		target = targetYaw;
+	}
+
+	/**
+	 * Latest turn output, -1 to +1. 0 when disabled. Sign follows the yaw: +
+	 * output turns towards + yaw.
+	 */
+
+	public double getOutput()
+	{
+		return output;
+	}
+
+	public void resetStatistics()
+	{
+		computeTime.reset();
+		resetStatistics = true;
+	}
+
+	// Log tracking error summary and compute time histogram.
+
+	public void logStatistics()
+	{
+		Util.consoleLog("heading error rms=%.2f max=%.2f updates=%d", errorCount == 0 ? 0 :
+				Math.sqrt(errorSquaredSum / errorCount), maxError, errorCount);
+
+		computeTime.dump();
+	}
+}
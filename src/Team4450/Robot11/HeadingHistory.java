@@ -0,0 +1,183 @@
+package Team4450.Robot11;
+
+/**
+ * Fixed size ring buffer of timestamped NavX total yaw and heading samples,
+ * stored in primitive arrays. Fed by NavXSampler at the NavX update rate so code
+ * reacting to older data (vision targets, delayed encoder readings) can ask what
+ * our heading was at a given time. Lookups interpolate between the two samples
+ * around the requested time and do not allocate or lock. There is one writer
+ * (the NavX update thread); readers on other threads detect when the entries
+ * they used were overwritten during the lookup and retry.
+ *
+ * Note that a NavX yaw reset is a step in total yaw, so lookups spanning a reset
+ * return values on either side of the step.
+ */
+
+public class HeadingHistory
+{
+	private final int		capacity, mask;
+	private final long[]	timesUs;
+	private final double[]	totalYaws, headings;
+
+	// Number of samples ever written. Entry n is in slot n & mask.
+	private volatile long	head;
+
+	/**
+	 * Create history buffer.
+	 * @param capacity Number of samples kept. Rounded up to a power of 2.
+	 */
+
+	public HeadingHistory(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+		this.capacity = size;
+		mask = size - 1;
+
+		timesUs = new long[size];
+		totalYaws = new double[size];
+		headings = new double[size];
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Add a sample. Single writer only, timestamps must not go backwards.
+	 * @param timeUs Sample time, FPGA microseconds.
+	 * @param totalYaw NavX total (continuous) yaw.
+	 * @param heading NavX heading 0-360.
+	 */
+
+	public void add(long timeUs, double totalYaw, double heading)
+	{
+		long	n = head;
+		int		slot = (int) (n & mask);
+
+		timesUs[slot] = timeUs;
+		totalYaws[slot] = totalYaw;
+		headings[slot] = heading;
+
+		head = n + 1;
+	}
+
+	// Remove all samples.
+
+	public void clear()
+	{
+		head = 0;
+	}
+
+	/**
+	 * Return interpolated total yaw at the given time.
+	 * @param timeUs FPGA time in microseconds.
+	 * @return Total yaw or NaN if the time is not covered by the buffer.
+	 */
+
+	public double getTotalYawAt(long timeUs)
+	{
+		return lookup(timeUs, false);
+	}
+
+	/**
+	 * Return interpolated heading (0-360) at the given time.
+	 * @param timeUs FPGA time in microseconds.
+	 * @return Heading or NaN if the time is not covered by the buffer.
+	 */
+
+	public double getHeadingAt(long timeUs)
+	{
+		return lookup(timeUs, true);
+	}
+
+	// Return time of oldest sample still in the buffer or -1 if empty.
+
+	public long getOldestTime()
+	{
+		long h, oldest, time;
+
+		do
+		{
+			h = head;
+
+			if (h == 0) return -1;
+
+			oldest = Math.max(0, h - capacity + 1);
+			time = timesUs[(int) (oldest & mask)];
+
+		} while (oldest <= head - capacity);
+
+		return time;
+	}
+
+	private double lookup(long timeUs, boolean heading)
+	{
+		long	h, first, lo, hi, mid, t0, t1;
+		double	v0, v1, delta, result;
+
+		while (true)
+		{
+			h = head;
+
+			if (h == 0) return Double.NaN;
+
+			// Skip the oldest slot, the writer may be about to overwrite it.
+
+			first = Math.max(0, h - capacity + 1);
+			lo = first;
+			hi = h - 1;
+
+			if (timeUs < timesUs[(int) (lo & mask)] || timeUs > timesUs[(int) (hi & mask)])
+				result = Double.NaN;
+			else
+			{
+				// Binary search for last entry with time <= timeUs.
+
+				while (lo < hi)
+				{
+					mid = (lo + hi + 1) >>> 1;
+
+					if (timesUs[(int) (mid & mask)] <= timeUs)
+						lo = mid;
+					else
+						hi = mid - 1;
+				}
+
+				t0 = timesUs[(int) (lo & mask)];
+				v0 = heading ? headings[(int) (lo & mask)] : totalYaws[(int) (lo & mask)];
+
+				if (lo == h - 1 || t0 == timeUs)
+					result = v0;
+				else
+				{
+					t1 = timesUs[(int) ((lo + 1) & mask)];
+					v1 = heading ? headings[(int) ((lo + 1) & mask)] : totalYaws[(int) ((lo + 1) & mask)];
+
+					delta = v1 - v0;
+
+					// Heading wraps at 360, interpolate across the short way.
+
+					if (heading)
+					{
+						if (delta > 180) delta -= 360;
+						else if (delta < -180) delta += 360;
+					}
+
+					result = t1 == t0 ? v1 : v0 + delta * (timeUs - t0) / (double) (t1 - t0);
+
+					if (heading)
+					{
+						if (result < 0) result += 360;
+						else if (result >= 360) result -= 360;
+					}
+				}
+			}
+
+			// Entries we used are still valid if the writer has not wrapped onto them.
+
+			if (first > head - capacity) return result;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package Team4450.Robot11;
+
+/**
+ * NavX values used by the control code. Yaw is + clockwise, -180 to 180 since the
+ * last resetYaw(), total yaw is the same but not wrapped, yaw rate is in degrees
+ * per second and heading is 0 to 360 from the value given to setHeading().
+ */
+
+public interface HeadingSensor
+{
+	double getYaw();
+
+	double getTotalYaw();
+
+	double getYawRate();
+
+	double getHeading();
+
+	void resetYaw();
+
+	void setHeading(double heading);
+}
@@ -0,0 +1,263 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.JoyStick;
+import Team4450.Lib.JoyStick.*;
+import Team4450.Lib.LaunchPad;
+import Team4450.Lib.LaunchPad.*;
+import Team4450.Lib.Util;
+import edu.wpi.first.wpilibj.Joystick;
+
+/**
+ * Polls the buttons and switches of all driver station HID devices from the
+ * control loop tick instead of one RobotLib monitor thread per JoyStick and
+ * LaunchPad. Each poll reads every device's button bits with one driver station
+ * call, queues button and switch edges into a preallocated event queue and then
+ * dispatches them to the existing JoyStickEventListener and LaunchPadEventListener
+ * implementations on the control thread. Latched state is kept the same way
+ * RobotLib does: buttons toggle it on press, switches follow their position.
+ *
+ * Register the JoyStick and LaunchPad objects after adding their buttons and
+ * controls and do not Start() them. Their stick axes are still read with
+ * GetX()/GetY(). Polling does not allocate.
+ */
+
+public class InputService
+{
+	private static final int	MAX_CONTROLS = 64, QUEUE_SIZE = 64, MAX_PORTS = 6;
+
+	// One tracked button or switch with its preallocated event.
+
+	private static class Control
+	{
+		int						port, mask;
+		boolean					pressed, isSwitch;
+
+		JoyStickButton			button;
+		JoyStickEvent			joyStickEvent;
+		JoyStickEventListener	joyStickListener;
+
+		LaunchPadControl		launchPadControl;
+		LaunchPadEvent			launchPadEvent;
+		LaunchPadEventListener	launchPadListener;
+	}
+
+	private final Control[]		controls = new Control[MAX_CONTROLS];
+	private int					controlCount;
+
+	// Button bits read once per port per poll.
+	private final int[]			ports = new int[MAX_PORTS], portButtons = new int[MAX_PORTS];
+	private int					portCount;
+
+	// Edge queue, filled by the device scan and drained by dispatch.
+	private final Control[]		queue = new Control[QUEUE_SIZE];
+	private final boolean[]		queuePressed = new boolean[QUEUE_SIZE];
+	private final long[]		queueTimeUs = new long[QUEUE_SIZE];
+	private int					queueHead, queueTail, dropped;
+	private long				eventTimeUs;
+
+	private final LatencyHistogram	pollTime = new LatencyHistogram("Input Poll Time");
+
+	public InputService()
+	{
+		Util.consoleLog();
+	}
+
+	/**
+	 * Track all buttons added to a JoyStick.
+	 * @param stick RobotLib JoyStick with its buttons added. Not started.
+	 * @param device The WPILib Joystick the JoyStick wraps.
+	 * @param listener Listener to get button events.
+	 */
+
+	public void addJoyStick(JoyStick stick, Joystick device, JoyStickEventListener listener)
+	{
+		JoyStickButton	button;
+		Control			control;
+
+		for (JoyStickButtonIDs id : JoyStickButtonIDs.values())
+		{
+			button = stick.FindButton(id);
+
+			if (button == null) continue;
+
+			control = addControl(device, id.value);
+
+			control.button = button;
+			control.joyStickEvent = stick.new JoyStickEvent(stick, button);
+			control.joyStickListener = listener;
+		}
+	}
+
+	/**
+	 * Track all controls added to a LaunchPad.
+	 * @param launchPad RobotLib LaunchPad with its controls added. Not started.
+	 * @param device The WPILib Joystick the LaunchPad wraps.
+	 * @param listener Listener to get control events.
+	 */
+
+	public void addLaunchPad(LaunchPad launchPad, Joystick device, LaunchPadEventListener listener)
+	{
+		LaunchPadControl	lpControl;
+		Control				control;
+
+		for (LaunchPadControlIDs id : LaunchPadControlIDs.values())
+		{
+			lpControl = launchPad.FindButton(id);
+
+			if (lpControl == null) continue;
+
+			control = addControl(device, id.value);
+
+			control.launchPadControl = lpControl;
+			control.launchPadEvent = launchPad.new LaunchPadEvent(launchPad, lpControl);
+			control.launchPadListener = listener;
+			control.isSwitch = lpControl.controlType == LaunchPadControlTypes.SWITCH;
+
+			// Switches start latched to their current position without an event.
+
+			if (control.isSwitch) lpControl.latchedState = control.pressed;
+		}
+	}
+
+	private Control addControl(Joystick device, int buttonNumber)
+	{
+		int		port = device.getPort(), index = -1;
+		Control	control;
+
+		if (controlCount == MAX_CONTROLS) throw new IllegalStateException("Too many input controls");
+
+		for (int i = 0; i < portCount; i++) if (ports[i] == port) index = i;
+
+		if (index == -1)
+		{
+			if (portCount == MAX_PORTS) throw new IllegalStateException("Too many input devices");
+
+			index = portCount++;
+			ports[index] = port;
+		}
+
+		control = new Control();
+
+		control.port = index;
+		control.mask = 1 << (buttonNumber - 1);
+
+		// Start from the current state so buttons held now do not fire.
+
+		control.pressed = (Devices.ds.getStickButtons(port) & control.mask) != 0;
+
+		controls[controlCount++] = control;
+
+		return control;
+	}
+
+	/**
+	 * Read all devices, queue button and switch edges and dispatch them to the
+	 * listeners. Call once per control tick.
+	 */
+
+	public void poll()
+	{
+		long	startUs = Hardware.getTime();
+		Control	control;
+		boolean	pressed;
+
+		for (int i = 0; i < portCount; i++) portButtons[i] = Devices.ds.getStickButtons(ports[i]);
+
+		for (int i = 0; i < controlCount; i++)
+		{
+			control = controls[i];
+
+			pressed = (portButtons[control.port] & control.mask) != 0;
+
+			if (pressed == control.pressed) continue;
+
+			control.pressed = pressed;
+
+			queue(control, pressed, startUs);
+		}
+
+		dispatch();
+
+		pollTime.record(Hardware.getTime() - startUs);
+	}
+
+	private void queue(Control control, boolean pressed, long timeUs)
+	{
+		int		next = (queueTail + 1) % QUEUE_SIZE;
+
+		if (next == queueHead)
+		{
+			dropped++;
+			return;
+		}
+
+		queue[queueTail] = control;
+		queuePressed[queueTail] = pressed;
+		queueTimeUs[queueTail] = timeUs;
+		queueTail = next;
+	}
+
+	// Drain the edge queue calling listeners in the order the edges were seen.
+
+	private void dispatch()
+	{
+		Control	control;
+		boolean	pressed;
+
+		while (queueHead != queueTail)
+		{
+			control = queue[queueHead];
+			pressed = queuePressed[queueHead];
+			eventTimeUs = queueTimeUs[queueHead];
+			queueHead = (queueHead + 1) % QUEUE_SIZE;
+
+			if (control.button != null)
+			{
+				if (pressed)
+				{
+					control.button.latchedState = !control.button.latchedState;
+					control.joyStickListener.ButtonDown(control.joyStickEvent);
+				}
+				else
+					control.joyStickListener.ButtonUp(control.joyStickEvent);
+			}
+			else if (control.isSwitch)
+			{
+				control.launchPadControl.latchedState = pressed;
+				control.launchPadListener.SwitchChange(control.launchPadEvent);
+			}
+			else if (pressed)
+			{
+				control.launchPadControl.latchedState = !control.launchPadControl.latchedState;
+				control.launchPadListener.ButtonDown(control.launchPadEvent);
+			}
+			else
+				control.launchPadListener.ButtonUp(control.launchPadEvent);
+		}
+	}
+
+	/**
+	 * FPGA time the button bits of the event being dispatched were read. Valid
+	 * inside a listener call.
+	 */
+
+	public long getEventTime()
+	{
+		return eventTimeUs;
+	}
+
+	public LatencyHistogram getPollTimeHistogram()
+	{
+		return pollTime;
+	}
+
+	// Log what is being polled, dropped events and the poll time histogram.
+
+	public void logStatistics()
+	{
+		Util.consoleLog("devices=%d controls=%d dropped events=%d threads=%d", portCount, controlCount, dropped,
+				Thread.activeCount());
+
+		pollTime.dump();
+	}
+}
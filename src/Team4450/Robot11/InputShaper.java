@@ -0,0 +1,216 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+
+/**
+ * Shapes one joystick axis through a pipeline of stages, applied in the order
+ * added. The standard pipeline built by fromProperties() is deadband, response
+ * curve, slew rate limit and scale. Curves are precomputed into a lookup table
+ * at construction and linearly interpolated, so shaping an axis is a few
+ * multiplies with no Math.pow or Math.log calls and no allocation.
+ *
+ * Stages are odd symmetric: they work on the magnitude and keep the sign. Any
+ * Stage implementation can be added with add(), so the pipeline can be composed
+ * differently per axis.
+ */
+
+public class InputShaper
+{
+	// One step of the pipeline. apply() is called once per tick and must not allocate.
+
+	public interface Stage
+	{
+		double apply(double value);
+	}
+
+	private static final int	MAX_STAGES = 8;
+
+	private final Stage[]		stages = new Stage[MAX_STAGES];
+	private int					stageCount;
+
+	public InputShaper add(Stage stage)
+	{
+		if (stageCount == MAX_STAGES) throw new IllegalStateException("Too many input shaping stages");
+
+		stages[stageCount++] = stage;
+
+		return this;
+	}
+
+	// Shape a value through all the stages.
+
+	public double apply(double value)
+	{
+		for (int i = 0; i < stageCount; i++) value = stages[i].apply(value);
+
+		return value;
+	}
+
+	/**
+	 * Build the standard pipeline from Robot.properties entries starting with
+	 * prefix. Stages left at their do nothing values are skipped.
+	 *
+	 * <prefix>Deadband: inputs below this are 0, the rest rescaled to 0-1 (default 0).
+	 * <prefix>Curve: linear, log or expo (default log).
+	 * <prefix>LogBase: log curve output is log base LogBase of (input + 1) (default 2).
+	 * <prefix>Expo: expo curve blend, 0 linear to 1 cubic (default .5).
+	 * <prefix>SlewRate: max output change per second, 0 for no limit (default 0).
+	 * <prefix>Scale: output multiplier (default 1).
+	 *
+	 * @param properties Robot properties.
+	 * @param prefix Property name prefix, such as DriveStick.
+	 * @param period Time between apply() calls in seconds, used by the slew limit.
+	 */
+
+	public static InputShaper fromProperties(Properties properties, String prefix, double period)
+	{
+		InputShaper	shaper = new InputShaper();
+		double		deadband = RobotProperties.getDouble(properties, prefix + "Deadband", 0);
+		double		slewRate = RobotProperties.getDouble(properties, prefix + "SlewRate", 0);
+		double		scale = RobotProperties.getDouble(properties, prefix + "Scale", 1);
+		String		curve = RobotProperties.getString(properties, prefix + "Curve", "log");
+
+		if (deadband > 0) shaper.add(new Deadband(deadband));
+
+		if (curve.equalsIgnoreCase("log"))
+			shaper.add(Curve.log(RobotProperties.getDouble(properties, prefix + "LogBase", 2)));
+		else if (curve.equalsIgnoreCase("expo"))
+			shaper.add(Curve.expo(RobotProperties.getDouble(properties, prefix + "Expo", .5)));
+		else if (!curve.equalsIgnoreCase("linear"))
+			throw new IllegalArgumentException("Unknown input curve " + prefix + "Curve=" + curve);
+
+		if (slewRate > 0) shaper.add(new SlewLimit(slewRate * period));
+
+		if (scale != 1) shaper.add(new Scale(scale));
+
+		return shaper;
+	}
+
+	// Zero small inputs and rescale the rest so output still starts at 0.
+
+	public static class Deadband implements Stage
+	{
+		private final double	deadband, gain;
+
+		public Deadband(double deadband)
+		{
+			this.deadband = deadband;
+
+			gain = 1 / (1 - deadband);
+		}
+
+		public double apply(double value)
+		{
+			if (value > deadband) return (value - deadband) * gain;
+
+			if (value < -deadband) return (value + deadband) * gain;
+
+			return 0;
+		}
+	}
+
+	/**
+	 * Response curve over input magnitude 0 to 1 held as an interpolated lookup
+	 * table. Inputs beyond +-1 are clamped.
+	 */
+
+	public static class Curve implements Stage
+	{
+		// Function to tabulate, called only while building the table.
+
+		public interface Function
+		{
+			double value(double x);
+		}
+
+		private static final int	TABLE_SIZE = 256;
+
+		private final double[]		table = new double[TABLE_SIZE + 1];
+
+		public Curve(Function function)
+		{
+			for (int i = 0; i <= TABLE_SIZE; i++) table[i] = function.value((double) i / TABLE_SIZE);
+		}
+
+		// Log curve, log base of (x + 1). Base 2 maps 0-1 onto 0-1.
+
+		public static Curve log(final double base)
+		{
+			final double	logBase = Math.log(base);
+
+			return new Curve(new Function()
+			{
+				public double value(double x) { return Math.log(x + 1) / logBase; }
+			});
+		}
+
+		// Expo curve, (1 - expo) * x + expo * x^3.
+
+		public static Curve expo(final double expo)
+		{
+			return new Curve(new Function()
+			{
+				public double value(double x) { return (1 - expo) * x + expo * x * x * x; }
+			});
+		}
+
+		public double apply(double value)
+		{
+			double	magnitude = value < 0 ? -value : value, position, result;
+			int		index;
+
+			if (magnitude >= 1)
+				result = table[TABLE_SIZE];
+			else
+			{
+				position = magnitude * TABLE_SIZE;
+				index = (int) position;
+				result = table[index] + (table[index + 1] - table[index]) * (position - index);
+			}
+
+			return value < 0 ? -result : result;
+		}
+	}
+
+	// Limit how fast the output can change, one step per apply() call.
+
+	public static class SlewLimit implements Stage
+	{
+		private final double	maxStep;
+		private double			last;
+
+		// @param maxStep Max output change per apply() call.
+
+		public SlewLimit(double maxStep)
+		{
+			this.maxStep = maxStep;
+		}
+
+		public double apply(double value)
+		{
+			if (value > last + maxStep)
+				value = last + maxStep;
+			else if (value < last - maxStep)
+				value = last - maxStep;
+
+			last = value;
+
+			return value;
+		}
+	}
+
+	public static class Scale implements Stage
+	{
+		private final double	scale;
+
+		public Scale(double scale)
+		{
+			this.scale = scale;
+		}
+
+		public double apply(double value)
+		{
+			return value * scale;
+		}
+	}
+}
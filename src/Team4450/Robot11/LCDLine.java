@@ -0,0 +1,190 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.LCD;
+
+/**
+ * Garbage free formatter for one line of the driver station LCD. Text and fixed
+ * point numbers are written into a preallocated char buffer instead of going
+ * through String.format, which boxes every argument. The line is only sent to
+ * the LCD when its text changed, and formatting is skipped entirely until the
+ * refresh interval has passed, so the LCD updates at its own rate independent
+ * of the control loop rate. A String is only created when the text is sent.
+ * Not thread safe, use from the control loop thread only.
+ */
+
+public class LCDLine
+{
+	private static final long[]	POWERS_OF_10 = {1, 10, 100, 1000, 10000, 100000, 1000000};
+	private static final long	MAX_SCALED = 1000000000000000L;
+
+	private final int		line;
+	private final long		refreshUs;
+	private final char[]	buffer, shown;
+
+	// LCD.printLine format arguments, the text goes in as %s so a % in it is not
+	// taken as a format specifier. Reused so printing does not allocate the varargs.
+	private final Object[]	printArgs = new Object[1];
+	private int				length, shownLength = -1;
+	private long			lastRefreshUs;
+
+	/**
+	 * Create a formatter for an LCD line.
+	 * @param line LCD line number.
+	 * @param capacity Maximum characters on the line. Extra text is dropped.
+	 * @param refreshInterval Minimum seconds between refreshes of this line.
+	 */
+
+	public LCDLine(int line, int capacity, double refreshInterval)
+	{
+		this.line = line;
+		this.refreshUs = (long) (refreshInterval * 1000000);
+
+		buffer = new char[capacity];
+		shown = new char[capacity];
+	}
+
+	/**
+	 * Check if the refresh interval has passed. Callers should skip formatting
+	 * the line when this returns false.
+	 */
+
+	public boolean isDue()
+	{
+		return Hardware.getTime() - lastRefreshUs >= refreshUs;
+	}
+
+	// Start formatting a new line of text.
+
+	public LCDLine begin()
+	{
+		length = 0;
+
+		return this;
+	}
+
+	public LCDLine add(String text)
+	{
+		for (int i = 0; i < text.length(); i++) addChar(text.charAt(i));
+
+		return this;
+	}
+
+	public LCDLine add(boolean value)
+	{
+		return add(value ? "true" : "false");
+	}
+
+	public LCDLine add(long value)
+	{
+		if (value < 0)
+		{
+			addChar('-');
+			value = -value;
+		}
+
+		addDigits(value, 1);
+
+		return this;
+	}
+
+	/**
+	 * Add a number with a fixed number of decimal places, rounded half up.
+	 * @param value Number to add.
+	 * @param decimals Decimal places, 0 to 6.
+	 */
+
+	public LCDLine add(double value, int decimals)
+	{
+		long	scaled, pow = POWERS_OF_10[decimals];
+
+		if (Double.isNaN(value)) return add("NaN");
+
+		if (value < 0)
+		{
+			value = -value;
+			scaled = Math.round(value * pow);
+
+			if (scaled != 0) addChar('-');
+		}
+		else
+			scaled = Math.round(value * pow);
+
+		if (Double.isInfinite(value) || scaled >= MAX_SCALED) return add("ovf");
+
+		addDigits(scaled / pow, 1);
+
+		if (decimals > 0)
+		{
+			addChar('.');
+			addDigits(scaled % pow, decimals);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Send the line to the LCD if the text differs from what is shown. Restarts
+	 * the refresh interval either way.
+	 */
+
+	public void print()
+	{
+		lastRefreshUs = Hardware.getTime();
+
+		if (length == shownLength)
+		{
+			int i = 0;
+
+			while (i < length && buffer[i] == shown[i]) i++;
+
+			if (i == length) return;
+		}
+
+		System.arraycopy(buffer, 0, shown, 0, length);
+		shownLength = length;
+
+		printArgs[0] = new String(buffer, 0, length);
+
+		LCD.printLine(line, "%s", printArgs);
+	}
+
+	// Forget what is shown so the next print always updates the LCD, as after LCD.clearAll().
+
+	public void invalidate()
+	{
+		shownLength = -1;
+		lastRefreshUs = 0;
+	}
+
+	private void addChar(char c)
+	{
+		if (length < buffer.length) buffer[length++] = c;
+	}
+
+	// Add non-negative value with at least minDigits digits, zero padded.
+
+	private void addDigits(long value, int minDigits)
+	{
+		int		digits = 1, start;
+		long	v = value;
+
+		while (v >= 10)
+		{
+			v /= 10;
+			digits++;
+		}
+
+		if (digits < minDigits) digits = minDigits;
+
+		start = length;
+
+		for (int i = digits - 1; i >= 0; i--)
+		{
+			if (start + i < buffer.length) buffer[start + i] = (char) ('0' + value % 10);
+
+			value /= 10;
+		}
+
+		length = Math.min(start + digits, buffer.length);
+	}
+}
@@ -0,0 +1,190 @@
+package Team4450.Robot11;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import Team4450.Lib.Util;
+
+/**
+ * Lock free latency histogram with HDR style log/linear buckets. Values are
+ * recorded in microseconds. Values below 32us get their own bucket, above that
+ * each power of 2 range is split into 16 linear sub buckets, so any recorded
+ * value is reported within about 6% of its real value. All storage is allocated
+ * up front, recording a sample does not allocate and can be done from any thread.
+ */
+
+public class LatencyHistogram
+{
+	private static final int	LINEAR_BUCKETS = 32, SUB_BUCKET_BITS = 4, SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int	MAX_MSB = 30;	// Values capped at 2^31us (~35 minutes).
+	private static final int	BUCKETS = LINEAR_BUCKETS + (MAX_MSB - 4) * SUB_BUCKETS;
+
+	private final String		name;
+	private final AtomicLongArray	counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong	totalCount = new AtomicLong(), totalValue = new AtomicLong(), maxValue = new AtomicLong();
+
+	// Telemetry keys registered once so publishing does not concatenate strings.
+	private final int			p50Key, p99Key, maxKey;
+
+	public LatencyHistogram(String name)
+	{
+		this.name = name;
+
+		p50Key = Telemetry.addNumber(name + " P50", .01);
+		p99Key = Telemetry.addNumber(name + " P99", .01);
+		maxKey = Telemetry.addNumber(name + " Max", .01);
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Record one sample.
+	 * @param valueUs Sample value in microseconds. Negative values are recorded as 0.
+	 */
+
+	public void record(long valueUs)
+	{
+		long	max;
+
+		if (valueUs < 0) valueUs = 0;
+
+		counts.incrementAndGet(bucketIndex(valueUs));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(valueUs);
+
+		max = maxValue.get();
+
+		while (valueUs > max && !maxValue.compareAndSet(max, valueUs)) max = maxValue.get();
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+
+		totalCount.set(0);
+		totalValue.set(0);
+		maxValue.set(0);
+	}
+
+	public long getCount()
+	{
+		return totalCount.get();
+	}
+
+	public long getMax()
+	{
+		return maxValue.get();
+	}
+
+	public double getMean()
+	{
+		long count = totalCount.get();
+
+		if (count == 0) return 0;
+
+		return (double) totalValue.get() / count;
+	}
+
+	/**
+	 * Return the value at the given percentile. The result is the upper bound of
+	 * the bucket the percentile falls in, capped at the recorded max.
+	 * @param percentile 0 to 100.
+	 * @return Value in microseconds.
+	 */
+
+	public long getPercentile(double percentile)
+	{
+		long	count = totalCount.get(), target, seen = 0;
+
+		if (count == 0) return 0;
+
+		target = (long) Math.ceil(count * percentile / 100.0);
+
+		if (target < 1) target = 1;
+
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts.get(i);
+
+			if (seen >= target) return Math.min(bucketUpperBound(i), maxValue.get());
+		}
+
+		return maxValue.get();
+	}
+
+	/**
+	 * Push p50, p99 and max (in milliseconds) to the SmartDashboard. Intended to be
+	 * called at a low rate, not every tick.
+	 */
+
+	public void publish()
+	{
+		Telemetry.setNumber(p50Key, getPercentile(50) / 1000.0);
+		Telemetry.setNumber(p99Key, getPercentile(99) / 1000.0);
+		Telemetry.setNumber(maxKey, maxValue.get() / 1000.0);
+	}
+
+	// Write summary and all non-empty buckets to the log.
+
+	public void dump()
+	{
+		long	count = totalCount.get(), bucketCount, seen = 0;
+
+		Util.consoleLog("%s count=%d mean=%.0fus p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus", name, count,
+				getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getPercentile(99.9), getMax());
+
+		if (count == 0) return;
+
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			bucketCount = counts.get(i);
+
+			if (bucketCount == 0) continue;
+
+			seen += bucketCount;
+
+			Util.consoleLog("%s %8d-%8dus %8d %6.2f%%", name, bucketLowerBound(i), bucketUpperBound(i), bucketCount,
+					seen * 100.0 / count);
+		}
+	}
+
+	// Map a value to its bucket.
+
+	static int bucketIndex(long valueUs)
+	{
+		int		msb;
+
+		if (valueUs < LINEAR_BUCKETS) return (int) valueUs;
+
+		msb = 63 - Long.numberOfLeadingZeros(valueUs);
+
+		if (msb > MAX_MSB) return BUCKETS - 1;
+
+		// Keep the top SUB_BUCKET_BITS bits below the leading 1 as the sub bucket.
+
+		return LINEAR_BUCKETS + (msb - 5) * SUB_BUCKETS +
+				(int) ((valueUs >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	static long bucketLowerBound(int index)
+	{
+		int		msb, sub;
+
+		if (index < LINEAR_BUCKETS) return index;
+
+		msb = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 5;
+		sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+
+		return (long) (SUB_BUCKETS + sub) << (msb - SUB_BUCKET_BITS);
+	}
+
+	static long bucketUpperBound(int index)
+	{
+		if (index == BUCKETS - 1) return Long.MAX_VALUE;
+
+		return bucketLowerBound(index + 1) - 1;
+	}
+}
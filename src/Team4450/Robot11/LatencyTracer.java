@@ -0,0 +1,157 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.Util;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Measures latency from driver input to the drive call for each input path
+ * (stick movement, button events). An input is stamped with the time it was
+ * read. As the sample moves through the drive tick the tracer records the time
+ * since the stamp at each stage: SHAPE after stick shaping, DECIDE after the
+ * drive mode logic, DRIVE when the robotDrive (or closed loop) call returns. Each
+ * path has a LatencyHistogram per stage, so the DRIVE histogram is the full
+ * input to actuation latency. A stamp stays pending until it reaches DRIVE, so an
+ * input that is not acted on right away shows its real wait.
+ *
+ * Tracing is switched at runtime with the LatencyTrace dashboard boolean, checked
+ * once a second. The switch is published through Telemetry like every other key,
+ * only reading it back goes to the SmartDashboard directly. Stamping and marking do not allocate and cost one time read
+ * when enabled, nothing but a flag check when disabled. All calls must come from
+ * the control thread.
+ */
+
+public class LatencyTracer
+{
+	public static final int		SHAPE = 0, DECIDE = 1, DRIVE = 2;
+
+	private static final String[]	STAGE_NAMES = {"Shape", "Decide", "Drive"};
+	private static final int		MAX_PATHS = 8;
+	private static final long		CHECK_INTERVAL_US = 1000000;
+
+	private final LatencyHistogram[][]	histograms = new LatencyHistogram[MAX_PATHS][];
+	private final long[]				stampUs = new long[MAX_PATHS];
+	private final int					switchKey = Telemetry.addBoolean("LatencyTrace");
+	private int							pathCount;
+	private boolean						enabled, switchPublished;
+	private long						checkUs;
+
+	public LatencyTracer(boolean enabled)
+	{
+		this.enabled = enabled;
+
+		Util.consoleLog("enabled=%b", enabled);
+	}
+
+	/**
+	 * Add an input path.
+	 * @param name Path name, histograms are named "<name> Latency <stage>".
+	 * @param shaped True if the path has a SHAPE stage (stick values).
+	 * @return Path id used to stamp and mark the path.
+	 */
+
+	public int addPath(String name, boolean shaped)
+	{
+		if (pathCount == MAX_PATHS) throw new IllegalStateException("Too many latency paths");
+
+		histograms[pathCount] = new LatencyHistogram[STAGE_NAMES.length];
+
+		for (int stage = shaped ? SHAPE : DECIDE; stage < STAGE_NAMES.length; stage++)
+			histograms[pathCount][stage] = new LatencyHistogram(name + " Latency " + STAGE_NAMES[stage]);
+
+		return pathCount++;
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Pick up the dashboard switch and publish the histograms. Does the work at
+	 * most once a second, call every tick.
+	 */
+
+	public void check()
+	{
+		long	now = Hardware.getTime();
+		boolean	enable;
+
+		if (now < checkUs) return;
+
+		checkUs = now + CHECK_INTERVAL_US;
+
+		if (!switchPublished)
+		{
+			Telemetry.setBoolean(switchKey, enabled);
+			switchPublished = true;
+		}
+
+		enable = SmartDashboard.getBoolean("LatencyTrace", enabled);
+
+		if (enable != enabled)
+		{
+			Util.consoleLog("enabled=%b", enable);
+
+			enabled = enable;
+
+			Telemetry.setBoolean(switchKey, enabled);
+
+			for (int i = 0; i < pathCount; i++) stampUs[i] = 0;
+		}
+
+		if (!enabled) return;
+
+		for (int i = 0; i < pathCount; i++)
+			for (int stage = 0; stage < STAGE_NAMES.length; stage++)
+				if (histograms[i][stage] != null) histograms[i][stage].publish();
+	}
+
+	/**
+	 * Stamp an input on a path. Ignored if the path already has a pending stamp,
+	 * so latency is measured from the oldest input not yet driven.
+	 * @param path Path id.
+	 * @param timeUs FPGA time the input was read.
+	 */
+
+	public void stamp(int path, long timeUs)
+	{
+		if (enabled && stampUs[path] == 0) stampUs[path] = timeUs;
+	}
+
+	// Record time since the stamp for one path at a stage.
+
+	public void mark(int path, int stage)
+	{
+		if (!enabled || stampUs[path] == 0) return;
+
+		histograms[path][stage].record(Hardware.getTime() - stampUs[path]);
+	}
+
+	// Record time since the stamp for every pending path at a stage. At DRIVE the
+	// stamps are complete and cleared.
+
+	public void markAll(int stage)
+	{
+		long	now;
+
+		if (!enabled) return;
+
+		now = Hardware.getTime();
+
+		for (int i = 0; i < pathCount; i++)
+		{
+			if (stampUs[i] == 0) continue;
+
+			histograms[i][stage].record(now - stampUs[i]);
+
+			if (stage == DRIVE) stampUs[i] = 0;
+		}
+	}
+
+	public void dump()
+	{
+		for (int i = 0; i < pathCount; i++)
+			for (int stage = 0; stage < STAGE_NAMES.length; stage++)
+				if (histograms[i][stage] != null && histograms[i][stage].getCount() > 0) histograms[i][stage].dump();
+	}
+}
@@ -0,0 +1,158 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.Util;
+
+/**
+ * Priority load shedding for a ControlLoop. Work in the loop body is tagged
+ * CRITICAL (drive output, safety), NORMAL (control sensors, recording) or
+ * BEST_EFFORT (LCD, dashboard, logging) by asking allow() before doing it.
+ * The loop reports each tick's body time with update(), which keeps a smoothed
+ * load (body time / period) and sets the shed level:
+ *
+ *   0  everything runs.
+ *   1  load over the best effort threshold, or a tick overran: best effort work
+ *      is dropped.
+ *   2  load over the normal threshold: best effort work is dropped and normal
+ *      work is deferred to every other tick.
+ *
+ * The level only drops back a step once load is HYSTERESIS under that step's
+ * threshold, so work comes back when load is back to normal without flapping.
+ * Each refused allow() is counted per priority, the counts are published and
+ * logged with the loop statistics. Control thread only, does not allocate.
+ */
+
+public class LoadShedder
+{
+	public static final int		CRITICAL = 0, NORMAL = 1, BEST_EFFORT = 2;
+
+	private static final double	SMOOTHING = .25, HYSTERESIS = .15;
+
+	private final String		name;
+	private final long			periodUs;
+	private final int			levelKey, normalKey, bestEffortKey;
+
+	private double				bestEffortThreshold = .6, normalThreshold = .9, load;
+	private int					level, maxLevel;
+	private long				ticks, normalShed, bestEffortShed, levelChanges;
+
+	/**
+	 * @param name Loop name for the log and dashboard.
+	 * @param period Loop period in seconds.
+	 */
+
+	public LoadShedder(String name, double period)
+	{
+		this.name = name;
+		this.periodUs = (long) (period * 1000000);
+
+		levelKey = Telemetry.addNumber(name + " Shed Level", .5);
+		normalKey = Telemetry.addNumber(name + " Shed Normal", .5);
+		bestEffortKey = Telemetry.addNumber(name + " Shed BestEffort", .5);
+	}
+
+	/**
+	 * Set the loads, as fractions of the period, at which work is shed.
+	 * @param bestEffort Load over which best effort work is dropped.
+	 * @param normal Load over which normal work is deferred.
+	 */
+
+	public void setThresholds(double bestEffort, double normal)
+	{
+		bestEffortThreshold = bestEffort;
+		normalThreshold = normal;
+
+		Util.consoleLog("%s best effort=%.2f normal=%.2f", name, bestEffort, normal);
+	}
+
+	/**
+	 * Report a tick's body time and update the shed level for the next tick.
+	 * @param bodyUs Time the loop body took in microseconds.
+	 */
+
+	public void update(long bodyUs)
+	{
+		double	tickLoad = (double) bodyUs / periodUs;
+		int		newLevel = level;
+
+		ticks++;
+
+		load += SMOOTHING * (tickLoad - load);
+
+		if (load > normalThreshold)
+			newLevel = 2;
+		else if (load > bestEffortThreshold || tickLoad >= 1)
+			newLevel = Math.max(newLevel, 1);
+
+		if (newLevel == 2 && load < normalThreshold - HYSTERESIS) newLevel = 1;
+
+		if (newLevel == 1 && load < bestEffortThreshold - HYSTERESIS && tickLoad < 1) newLevel = 0;
+
+		if (newLevel != level)
+		{
+			levelChanges++;
+			level = newLevel;
+
+			if (level > maxLevel) maxLevel = level;
+		}
+	}
+
+	/**
+	 * Return true if work of this priority should run this tick. Counts the work
+	 * as shed if not.
+	 * @param priority CRITICAL, NORMAL or BEST_EFFORT.
+	 */
+
+	public boolean allow(int priority)
+	{
+		if (priority == BEST_EFFORT && level >= 1)
+		{
+			bestEffortShed++;
+			return false;
+		}
+
+		if (priority == NORMAL && level == 2 && (ticks & 1) != 0)
+		{
+			normalShed++;
+			return false;
+		}
+
+		return true;
+	}
+
+	public int getLevel()
+	{
+		return level;
+	}
+
+	// Smoothed body time as a fraction of the period.
+
+	public double getLoad()
+	{
+		return load;
+	}
+
+	public long getNormalShed()
+	{
+		return normalShed;
+	}
+
+	public long getBestEffortShed()
+	{
+		return bestEffortShed;
+	}
+
+	// Push the level and shed counts to the dashboard. Called by the loop at a low rate.
+
+	public void publish()
+	{
+		Telemetry.setNumber(levelKey, level);
+		Telemetry.setNumber(normalKey, normalShed);
+		Telemetry.setNumber(bestEffortKey, bestEffortShed);
+	}
+
+	public void logStatistics()
+	{
+		Util.consoleLog("%s shed level=%d max=%d changes=%d load=%.2f normal=%d best effort=%d", name, level,
+				maxLevel, levelChanges, load, normalShed, bestEffortShed);
+	}
+}
@@ -0,0 +1,208 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.Util;
+
+/**
+ * One low priority thread running all the robot's periodic background monitors
+ * (battery, compressor, PDP) instead of a thread each. Each task has a period, a
+ * priority and a run time budget. When several tasks are due the highest
+ * priority runs first. A task that runs over its budget has its next run pushed
+ * back in proportion, so a slow device read can't take more than its budget's
+ * share of the CPU away from the control threads. Run times go into a
+ * LatencyHistogram per task, logged with the run and overrun counts by
+ * logStatistics().
+ *
+ * Tasks run on the scheduler thread one at a time, so a task must not block for
+ * long. Add all tasks before start().
+ */
+
+public class MonitorScheduler extends Thread
+{
+	// A monitor task, run every period on the scheduler thread.
+
+	public interface Task
+	{
+		void run();
+	}
+
+	private static final int	MAX_TASKS = 8;
+
+	// One scheduled task and its statistics.
+
+	private static class Entry
+	{
+		final String			name;
+		final Task				task;
+		final long				periodUs, budgetUs;
+		final int				priority;
+		final LatencyHistogram	runTime;
+
+		long					nextUs;
+		volatile int			runs, overruns;
+		volatile long			totalUs;
+
+		Entry(String name, Task task, long periodUs, int priority, long budgetUs)
+		{
+			this.name = name;
+			this.task = task;
+			this.periodUs = periodUs;
+			this.priority = priority;
+			this.budgetUs = budgetUs;
+
+			runTime = new LatencyHistogram("Monitor " + name);
+		}
+	}
+
+	// This variable and method make sure this class is a singleton.
+
+	private static MonitorScheduler	scheduler = null;
+
+	public static MonitorScheduler getInstance()
+	{
+		if (scheduler == null) scheduler = new MonitorScheduler();
+
+		return scheduler;
+	}
+
+	// This is the rest of the class.
+
+	private final Entry[]		entries = new Entry[MAX_TASKS];
+	private int					entryCount;
+	private volatile long		statisticsStartUs;
+
+	private MonitorScheduler()
+	{
+		Util.consoleLog();
+
+		setName("MonitorScheduler");
+		setPriority(Thread.MIN_PRIORITY);
+		setDaemon(true);
+	}
+
+	/**
+	 * Add a task. First run is one period after start().
+	 * @param name Task name for the log.
+	 * @param period Seconds between runs.
+	 * @param priority Higher runs first when several tasks are due.
+	 * @param budget Run time in seconds a run may take before the task is slowed down.
+	 * @param task Task to run.
+	 */
+
+	public synchronized void add(String name, double period, int priority, double budget, Task task)
+	{
+		if (isAlive()) throw new IllegalStateException("Add monitor tasks before start");
+
+		if (entryCount == MAX_TASKS) throw new IllegalStateException("Too many monitor tasks");
+
+		entries[entryCount++] = new Entry(name, task, (long) (period * 1000000), priority, (long) (budget * 1000000));
+
+		Util.consoleLog("%s period=%.3f priority=%d budget=%.1fms", name, period, priority, budget * 1000);
+	}
+
+	public void run()
+	{
+		Entry	entry;
+		long	nowUs, startUs, runUs, waitUs;
+
+		Util.consoleLog("tasks=%d", entryCount);
+
+		nowUs = statisticsStartUs = Hardware.getTime();
+
+		for (int i = 0; i < entryCount; i++) entries[i].nextUs = nowUs + entries[i].periodUs;
+
+		try
+		{
+			while (!isInterrupted())
+			{
+				// Highest priority task that is due, and how long until the next one is.
+
+				entry = null;
+				waitUs = Long.MAX_VALUE;
+				nowUs = Hardware.getTime();
+
+				for (int i = 0; i < entryCount; i++)
+				{
+					if (entries[i].nextUs <= nowUs)
+					{
+						if (entry == null || entries[i].priority > entry.priority) entry = entries[i];
+					}
+					else
+						waitUs = Math.min(waitUs, entries[i].nextUs - nowUs);
+				}
+
+				if (entry == null)
+				{
+					if (waitUs == Long.MAX_VALUE) break;
+
+					Hardware.sleep(waitUs);
+					continue;
+				}
+
+				startUs = Hardware.getTime();
+
+				try
+				{
+					entry.task.run();
+				}
+				catch (Exception e) {Util.logException(e);}
+
+				nowUs = Hardware.getTime();
+				runUs = nowUs - startUs;
+
+				// Monitors also run while disabled, when no control loop is flushing.
+
+				Telemetry.flush();
+
+				entry.runTime.record(runUs);
+				entry.runs++;
+				entry.totalUs += runUs;
+
+				// Runs missed while late are dropped, not made up.
+
+				entry.nextUs += entry.periodUs;
+
+				if (entry.nextUs < nowUs) entry.nextUs = nowUs + entry.periodUs;
+
+				// Over budget: wait long enough that the task stays within its share.
+
+				if (runUs > entry.budgetUs)
+				{
+					entry.overruns++;
+					entry.nextUs += entry.periodUs * (runUs - entry.budgetUs) / Math.max(1, entry.budgetUs);
+				}
+			}
+		}
+		catch (Throwable e) {Util.logException(e);}
+
+		Util.consoleLog("end");
+	}
+
+	// Start new statistics, as at the start of a mode.
+
+	public void resetStatistics()
+	{
+		for (int i = 0; i < entryCount; i++)
+		{
+			entries[i].runTime.reset();
+			entries[i].runs = entries[i].overruns = 0;
+			entries[i].totalUs = 0;
+		}
+
+		statisticsStartUs = Hardware.getTime();
+	}
+
+	// Log each task's runs, overruns, share of one CPU and run time distribution.
+
+	public void logStatistics()
+	{
+		double	elapsedUs = Math.max(1, Hardware.getTime() - statisticsStartUs);
+
+		for (int i = 0; i < entryCount; i++)
+		{
+			Util.consoleLog("%s runs=%d overruns=%d cpu=%.3f%%", entries[i].name, entries[i].runs, entries[i].overruns,
+					entries[i].totalUs * 100 / elapsedUs);
+
+			entries[i].runTime.dump();
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.Util;
+
+/**
+ * One dimensional motion profile stored as primitive position, velocity and
+ * acceleration arrays sampled at a fixed time step. Profiles are generated
+ * with the box filter method: a velocity step lasting distance / maxVelocity
+ * is passed through a moving average of length maxVelocity / maxAcceleration
+ * (giving a trapezoidal profile) and optionally a second one of length
+ * maxAcceleration / maxJerk (giving an S-curve). Moving averages preserve area
+ * so the profile always ends exactly at the requested distance. For short moves
+ * the peak velocity (and for S-curves the peak acceleration) is lowered so the
+ * move never coasts below its limits. Generation allocates the arrays, so do it
+ * ahead of time, never inside a control loop.
+ */
+
+public class MotionProfile
+{
+	public final double[]	position, velocity, acceleration;
+	public final int		count;
+	public final double		dt, distance;
+
+	private MotionProfile(int count, double dt, double distance)
+	{
+		this.count = count;
+		this.dt = dt;
+		this.distance = distance;
+
+		position = new double[count];
+		velocity = new double[count];
+		acceleration = new double[count];
+	}
+
+	// Total profile time in seconds.
+
+	public double getDuration()
+	{
+		return (count - 1) * dt;
+	}
+
+	/**
+	 * Generate a trapezoidal (acceleration limited) profile.
+	 * @param distance Distance to move, may be negative.
+	 * @param maxVelocity Max velocity, distance units per second.
+	 * @param maxAcceleration Max acceleration, distance units per second^2.
+	 * @param dt Sample time step in seconds.
+	 */
+
+	public static MotionProfile trapezoidal(double distance, double maxVelocity, double maxAcceleration, double dt)
+	{
+		return generate(distance, maxVelocity, maxAcceleration, 0, dt);
+	}
+
+	/**
+	 * Generate an S-curve (jerk limited) profile.
+	 * @param distance Distance to move, may be negative.
+	 * @param maxVelocity Max velocity, distance units per second.
+	 * @param maxAcceleration Max acceleration, distance units per second^2.
+	 * @param maxJerk Max jerk, distance units per second^3.
+	 * @param dt Sample time step in seconds.
+	 */
+
+	public static MotionProfile sCurve(double distance, double maxVelocity, double maxAcceleration, double maxJerk,
+			double dt)
+	{
+		return generate(distance, maxVelocity, maxAcceleration, maxJerk, dt);
+	}
+
+	private static MotionProfile generate(double distance, double maxVelocity, double maxAcceleration, double maxJerk,
+			double dt)
+	{
+		double			sign = distance < 0 ? -1 : 1, length = Math.abs(distance), height, sum1 = 0, sum2 = 0;
+		double			step, filtered1, filtered2;
+		int				stepCount, filter1, filter2, count;
+		double[]		history1, history2;
+		MotionProfile	profile;
+
+		if (maxVelocity <= 0 || maxAcceleration <= 0 || dt <= 0)
+			throw new IllegalArgumentException("Profile limits and dt must be > 0");
+
+		// Short move: lower peak velocity so the step is no shorter than the accel ramp
+		// (triangular profile), and lower peak acceleration so the accel ramp is no
+		// shorter than the jerk ramp.
+
+		maxVelocity = Math.min(maxVelocity, Math.sqrt(length * maxAcceleration));
+
+		if (maxJerk > 0) maxAcceleration = Math.min(maxAcceleration, Math.sqrt(maxVelocity * maxJerk));
+
+		if (length == 0) maxVelocity = maxAcceleration = 1;
+
+		// Samples in the velocity step and in each moving average. Rounding up keeps
+		// velocity, acceleration and jerk at or under their limits.
+
+		stepCount = Math.max(1, (int) Math.ceil(length / maxVelocity / dt));
+		filter1 = Math.max(1, (int) Math.ceil(maxVelocity / maxAcceleration / dt));
+		filter2 = maxJerk > 0 ? Math.max(1, (int) Math.ceil(maxAcceleration / maxJerk / dt)) : 1;
+
+		height = length / (stepCount * dt);
+
+		// Profile starts and ends at rest, one sample of 0 on each end.
+
+		count = stepCount + filter1 + filter2;
+
+		profile = new MotionProfile(count, dt, distance);
+
+		history1 = new double[filter1];
+		history2 = new double[filter2];
+
+		for (int i = 1; i < count; i++)
+		{
+			step = i <= stepCount ? height : 0;
+
+			// First moving average over the velocity step.
+
+			sum1 += step - history1[i % filter1];
+			history1[i % filter1] = step;
+			filtered1 = sum1 / filter1;
+
+			// Second moving average over the first.
+
+			sum2 += filtered1 - history2[i % filter2];
+			history2[i % filter2] = filtered1;
+			filtered2 = sum2 / filter2;
+
+			profile.velocity[i] = filtered2;
+			profile.position[i] = profile.position[i - 1] + filtered2 * dt;
+			profile.acceleration[i] = (filtered2 - profile.velocity[i - 1]) / dt;
+		}
+
+		// Clear rounding drift in the running sums.
+
+		profile.velocity[count - 1] = 0;
+		profile.acceleration[count - 1] = 0;
+		profile.position[count - 1] = length;
+
+		if (sign < 0)
+			for (int i = 0; i < count; i++)
+			{
+				profile.position[i] = -profile.position[i];
+				profile.velocity[i] = -profile.velocity[i];
+				profile.acceleration[i] = -profile.acceleration[i];
+			}
+
+		return profile;
+	}
+
+	/**
+	 * Time profile generation and log the results. Run on the robot from test
+	 * mode to see how fast profiles generate on roboRIO hardware.
+	 * @param iterations Number of profiles of each type to generate.
+	 */
+
+	public static void benchmark(int iterations)
+	{
+		long	start, trapezoidalNs, sCurveNs, samples = 0;
+		double	distance;
+
+		Util.consoleLog("iterations=%d", iterations);
+
+		// Warm up the JIT.
+
+		for (int i = 0; i < 200; i++)
+		{
+			trapezoidal(24 + i, 120, 200, .01);
+			sCurve(24 + i, 120, 200, 1000, .01);
+		}
+
+		start = System.nanoTime();
+
+		for (int i = 0; i < iterations; i++)
+		{
+			distance = 12 + (i % 300);
+			samples += trapezoidal(distance, 120, 200, .01).count;
+		}
+
+		trapezoidalNs = System.nanoTime() - start;
+
+		start = System.nanoTime();
+
+		for (int i = 0; i < iterations; i++)
+		{
+			distance = 12 + (i % 300);
+			samples += sCurve(distance, 120, 200, 1000, .01).count;
+		}
+
+		sCurveNs = System.nanoTime() - start;
+
+		Util.consoleLog("trapezoidal=%.1fus/profile s-curve=%.1fus/profile avg samples=%d",
+				trapezoidalNs / 1000.0 / iterations, sCurveNs / 1000.0 / iterations, samples / (2 * iterations));
+	}
+}
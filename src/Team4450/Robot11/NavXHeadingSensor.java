@@ -0,0 +1,45 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.NavX;
+
+// Robot HeadingSensor: the RobotLib NavX.
+
+public class NavXHeadingSensor implements HeadingSensor
+{
+	private final NavX	navx;
+
+	public NavXHeadingSensor(NavX navx)
+	{
+		this.navx = navx;
+	}
+
+	public double getYaw()
+	{
+		return navx.getYaw();
+	}
+
+	public double getTotalYaw()
+	{
+		return navx.getTotalYaw();
+	}
+
+	public double getYawRate()
+	{
+		return navx.getYawRate();
+	}
+
+	public double getHeading()
+	{
+		return navx.getHeading();
+	}
+
+	public void resetYaw()
+	{
+		navx.resetYaw();
+	}
+
+	public void setHeading(double heading)
+	{
+		navx.setHeading(heading);
+	}
+}
@@ -0,0 +1,228 @@
+package Team4450.Robot11;
+
+import com.kauailabs.navx.frc.AHRSProtocol.AHRSUpdateBase;
+import com.kauailabs.navx.frc.ITimestampedDataSubscriber;
+
+import Team4450.Lib.Util;
+
+/**
+ * Captures one consistent, timestamped sample of the NavX values we use (yaw,
+ * total yaw, yaw rate, heading) either on every NavX data update callback or on
+ * demand once per control tick. The sample is published with a sequence lock so
+ * readers on any thread get all fields from the same update without locking, and
+ * control code reads its own Snapshot copy instead of hitting the device again.
+ * Each sample is also added to a heading history buffer for time based lookups,
+ * and registered update listeners are called after each NavX update.
+ */
+
+public class NavXSampler implements ITimestampedDataSubscriber
+{
+	// Per reader copy of a sample. Filled by read(), not changed until the next read().
+
+	public static class Snapshot
+	{
+		public double	yaw, totalYaw, yawRate, heading;
+		public long		timeUs, sensorTimeMs;
+		public int		sequence;
+		// Count of resetYaw() calls. Changes when yaw and total yaw jump to 0.
+		public int		resets;
+	}
+
+	// This variable and method make sure this class is a singleton.
+
+	private static NavXSampler	sampler = null;
+
+	public static NavXSampler getInstance()
+	{
+		if (sampler == null) sampler = new NavXSampler();
+
+		return sampler;
+	}
+
+	// This is the rest of the class.
+
+	// Sequence is odd while a write is in progress.
+	private volatile int		sequence;
+	private volatile double		yaw, totalYaw, yawRate, heading;
+	private volatile long		timeUs, sensorTimeMs;
+	private volatile int		resets;
+	private volatile boolean	callbacksActive;
+	private int					resetCount;
+
+	// About 2.5 seconds of history at the 200hz NavX update rate.
+	private final HeadingHistory	history = new HeadingHistory(512);
+
+	private static final int		MAX_LISTENERS = 4;
+	private final Runnable[]		listeners = new Runnable[MAX_LISTENERS];
+	private volatile int			listenerCount;
+
+	private NavXSampler()
+	{
+		Util.consoleLog();
+	}
+
+	/**
+	 * Start sampling on every NavX update. Once running, capture() does nothing.
+	 */
+
+	public synchronized void startCallbacks()
+	{
+		if (callbacksActive) return;
+
+		callbacksActive = Devices.navx.getAHRS().registerCallback(this, null);
+
+		Util.consoleLog("active=%b", callbacksActive);
+	}
+
+	public synchronized void stopCallbacks()
+	{
+		if (!callbacksActive) return;
+
+		Devices.navx.getAHRS().deregisterCallback(this);
+
+		callbacksActive = false;
+
+		Util.consoleLog();
+	}
+
+	public boolean isCallbackActive()
+	{
+		return callbacksActive;
+	}
+
+	/**
+	 * Take a sample from the NavX now if update callbacks are not running. Call at
+	 * the start of each control tick.
+	 */
+
+	public void capture()
+	{
+		if (!callbacksActive) sample(0);
+	}
+
+	/**
+	 * Take a sample now even if update callbacks are running. Used after changing
+	 * NavX state so the next read sees the change before the next NavX update.
+	 */
+
+	public void refresh()
+	{
+		sample(0);
+	}
+
+	// Reset NavX yaw and refresh the sample.
+
+	public synchronized void resetYaw()
+	{
+		if (Hardware.navx == null) return;
+
+		Hardware.navx.resetYaw();
+
+		resetCount++;
+
+		refresh();
+	}
+
+	// Called by the NavX library on its update thread each time new data arrives.
+
+	public void timestampedDataReceived(long systemTimestamp, long sensorTimestamp, AHRSUpdateBase sensorData,
+			Object context)
+	{
+		update(sensorTimestamp);
+	}
+
+	/**
+	 * Take a sample for a new NavX update and call the update listeners. Called
+	 * for each NavX callback, and by the Simulator for each simulated update.
+	 * @param sensorTimestamp NavX sensor time in ms.
+	 */
+
+	public void update(long sensorTimestamp)
+	{
+		sample(sensorTimestamp);
+
+		for (int i = 0; i < listenerCount; i++) listeners[i].run();
+	}
+
+	/**
+	 * Add a listener called on the NavX update thread after each new sample.
+	 * Listeners must be quick, typically they just wake another thread.
+	 * @param listener Listener to call.
+	 */
+
+	public synchronized void addUpdateListener(Runnable listener)
+	{
+		if (listenerCount == MAX_LISTENERS) throw new IllegalStateException("Too many NavX update listeners");
+
+		listeners[listenerCount] = listener;
+		listenerCount++;
+	}
+
+	// Read all fields from the NavX and publish them as one sample.
+
+	private synchronized void sample(long sensorTimestamp)
+	{
+		double	newYaw, newTotalYaw, newYawRate, newHeading;
+		long	now = Hardware.getTime();
+
+		// NavX startup step failed, keep the zero sample.
+
+		if (Hardware.navx == null) return;
+
+		newYaw = Hardware.navx.getYaw();
+		newTotalYaw = Hardware.navx.getTotalYaw();
+		newYawRate = Hardware.navx.getYawRate();
+		newHeading = Hardware.navx.getHeading();
+
+		sequence++;
+
+		yaw = newYaw;
+		totalYaw = newTotalYaw;
+		yawRate = newYawRate;
+		heading = newHeading;
+		timeUs = now;
+		sensorTimeMs = sensorTimestamp;
+		resets = resetCount;
+
+		sequence++;
+
+		history.add(now, newTotalYaw, newHeading);
+	}
+
+	/**
+	 * Return the heading history buffer fed by this sampler.
+	 */
+
+	public HeadingHistory getHistory()
+	{
+		return history;
+	}
+
+	/**
+	 * Copy the latest sample into the caller's snapshot. Does not lock and does
+	 * not touch the NavX.
+	 * @param snapshot Snapshot to fill.
+	 */
+
+	public void read(Snapshot snapshot)
+	{
+		int		start;
+
+		do
+		{
+			start = sequence;
+
+			while ((start & 1) != 0) start = sequence;
+
+			snapshot.yaw = yaw;
+			snapshot.totalYaw = totalYaw;
+			snapshot.yawRate = yawRate;
+			snapshot.heading = heading;
+			snapshot.timeUs = timeUs;
+			snapshot.sensorTimeMs = sensorTimeMs;
+			snapshot.resets = resets;
+			snapshot.sequence = start;
+
+		} while (start != sequence);
+	}
+}
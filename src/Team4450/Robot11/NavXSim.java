@@ -0,0 +1,69 @@
+package Team4450.Robot11;
+
+import java.util.Random;
+
+/**
+ * Simulated NavX reading the ground truth heading of a DrivetrainSim, with
+ * optional gaussian noise. Yaw and total yaw are relative to the last
+ * resetYaw(), heading is relative to the last setHeading().
+ */
+
+public class NavXSim implements HeadingSensor
+{
+	private final DrivetrainSim	drivetrain;
+	private final double		noise;
+	private final Random		random = new Random(4450);
+
+	private double				yawZero, headingZero, headingSetting;
+
+	/**
+	 * @param drivetrain Simulated drive to read.
+	 * @param noise Standard deviation of yaw noise in degrees.
+	 */
+
+	public NavXSim(DrivetrainSim drivetrain, double noise)
+	{
+		this.drivetrain = drivetrain;
+		this.noise = noise;
+	}
+
+	private double measuredHeading()
+	{
+		return drivetrain.getHeading() + (noise == 0 ? 0 : noise * random.nextGaussian());
+	}
+
+	public double getYaw()
+	{
+		double	yaw = Math.IEEEremainder(getTotalYaw(), 360);
+
+		return yaw == -180 ? 180 : yaw;
+	}
+
+	public double getTotalYaw()
+	{
+		return measuredHeading() - yawZero;
+	}
+
+	public double getYawRate()
+	{
+		return drivetrain.getYawRate();
+	}
+
+	public double getHeading()
+	{
+		double	heading = (measuredHeading() - headingZero + headingSetting) % 360;
+
+		return heading < 0 ? heading + 360 : heading;
+	}
+
+	public void resetYaw()
+	{
+		yawZero = drivetrain.getHeading();
+	}
+
+	public void setHeading(double heading)
+	{
+		headingZero = drivetrain.getHeading();
+		headingSetting = heading;
+	}
+}
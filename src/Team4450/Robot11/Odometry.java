@@ -0,0 +1,368 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import Team4450.Lib.Util;
+
+/**
+ * Pose estimator running on its own thread. It fuses the left and right drive
+ * Talon encoder distances with NavX total yaw into an x, y, heading pose. Heading
+ * comes from the NavX and distance from the average of the encoders, integrated
+ * along the arc between updates. It runs on every NavX update (about 200hz) or
+ * every 10ms if NavX callbacks are not running, well above the 50hz control loop.
+ *
+ * The pose is published with a sequence lock so Autonomous, Teleop and others
+ * read a consistent copy without locking. Units are encoder inches and NavX
+ * degrees: x is along the + power drive direction at reset, y is to the right
+ * and heading is + clockwise. NavX yaw resets (NavXSampler.resetYaw()) do not
+ * disturb the pose heading.
+ *
+ * simulationCheck() runs the same update code against a simulated robot and
+ * logs the error from ground truth.
+ */
+
+public class Odometry extends Thread
+{
+	// Per reader copy of the pose. Filled by read(), not changed until the next read().
+
+	public static class Snapshot
+	{
+		public double	x, y, heading, velocity;
+		public long		timeUs;
+		public int		sequence;
+	}
+
+	// This variable and method make sure this class is a singleton.
+
+	private static Odometry	odometry = null;
+
+	public static Odometry getInstance(Properties properties)
+	{
+		if (odometry == null) odometry = new Odometry(properties);
+
+		return odometry;
+	}
+
+	public static Odometry getInstance()
+	{
+		return odometry;
+	}
+
+	// This is the rest of the class.
+
+	private static final long			UPDATE_PERIOD_NS = 10000000, PUBLISH_INTERVAL_US = 100000;
+
+	private final NavXSampler			navxSampler = NavXSampler.getInstance();
+	private final NavXSampler.Snapshot	navx = new NavXSampler.Snapshot();
+	private final int					xKey = Telemetry.addNumber("PoseX", .5);
+	private final int					yKey = Telemetry.addNumber("PoseY", .5);
+	private final int					headingKey = Telemetry.addNumber("PoseHeading", .5);
+
+	// Published pose. Sequence is odd while a write is in progress.
+	private volatile int				sequence;
+	private volatile double				x, y, heading, velocity;
+	private volatile long				timeUs;
+
+	// Reset request handed to the odometry thread.
+	private volatile boolean			resetRequested;
+	private volatile double				resetX, resetY, resetHeading;
+
+	// Integration state, only touched by the updating thread.
+	private double						poseX, poseY, poseHeading, lastLeft, lastRight, lastTotalYaw;
+	private long						lastTimeUs;
+	private int							lastResets;
+	private boolean						initialized;
+	private long						updates, startUs, publishUs;
+
+	private Odometry(Properties properties)
+	{
+		Util.consoleLog();
+
+		setName("Odometry");
+		setPriority(Thread.NORM_PRIORITY + 1);
+		setDaemon(true);
+	}
+
+	public void run()
+	{
+		final Thread	self = this;
+
+		Util.consoleLog();
+
+		// Wake up on every NavX update.
+
+		navxSampler.addUpdateListener(new Runnable()
+		{
+			public void run() { LockSupport.unpark(self); }
+		});
+
+		try
+		{
+			while (!isInterrupted())
+			{
+				LockSupport.parkNanos(UPDATE_PERIOD_NS);
+
+				step();
+			}
+		}
+		catch (Throwable e) {Util.logException(e);}
+
+		Util.consoleLog("end");
+	}
+
+	/**
+	 * Read the sensors and advance the pose once. Called by the odometry thread,
+	 * and by the Simulator on each simulated NavX update.
+	 */
+
+	public void step()
+	{
+		navxSampler.capture();
+		navxSampler.read(navx);
+
+		if (startUs == 0) startUs = navx.timeUs;
+
+		// A reset also takes new encoder and yaw baselines.
+
+		if (resetRequested)
+		{
+			resetRequested = false;
+			poseX = resetX;
+			poseY = resetY;
+			poseHeading = resetHeading;
+			initialized = false;
+		}
+
+		update(Hardware.drive.getLeftDistance(), Hardware.drive.getRightDistance(), navx.totalYaw, navx.resets,
+				Hardware.getTime());
+
+		if (timeUs >= publishUs)
+		{
+			Telemetry.setNumber(xKey, poseX);
+			Telemetry.setNumber(yKey, poseY);
+			Telemetry.setNumber(headingKey, poseHeading);
+			publishUs = timeUs + PUBLISH_INTERVAL_US;
+		}
+	}
+
+	/**
+	 * Advance the pose with new sensor readings and publish it.
+	 * @param left Left encoder distance.
+	 * @param right Right encoder distance.
+	 * @param totalYaw NavX total (unwrapped) yaw.
+	 * @param resets NavX yaw reset count. When it changes the yaw jump is ignored.
+	 * @param now Time of the readings in microseconds.
+	 */
+
+	void update(double left, double right, double totalYaw, int resets, long now)
+	{
+		double	distance, turn, chord, direction;
+
+		if (!initialized)
+		{
+			initialized = true;
+			lastLeft = left;
+			lastRight = right;
+			lastTotalYaw = totalYaw;
+			lastResets = resets;
+			lastTimeUs = now;
+		}
+
+		if (resets != lastResets)
+		{
+			lastTotalYaw = totalYaw;
+			lastResets = resets;
+		}
+
+		distance = ((left - lastLeft) + (right - lastRight)) / 2;
+		turn = totalYaw - lastTotalYaw;
+
+		// Move along the arc: the chord is shorter than the arc and points half way
+		// through the turn.
+
+		chord = Math.abs(turn) < 1e-6 ? distance : distance * Math.sin(Math.toRadians(turn) / 2) /
+				(Math.toRadians(turn) / 2);
+
+		direction = Math.toRadians(poseHeading + turn / 2);
+
+		poseX += chord * Math.cos(direction);
+		poseY += chord * Math.sin(direction);
+		poseHeading += turn;
+
+		sequence++;
+
+		x = poseX;
+		y = poseY;
+		heading = poseHeading;
+		velocity = now > lastTimeUs ? distance * 1000000 / (now - lastTimeUs) : 0;
+		timeUs = now;
+
+		sequence++;
+
+		lastLeft = left;
+		lastRight = right;
+		lastTotalYaw = totalYaw;
+		lastTimeUs = now;
+		updates++;
+	}
+
+	/**
+	 * Set the pose. Takes effect on the next update.
+	 * @param x X position.
+	 * @param y Y position.
+	 * @param heading Heading in degrees, + clockwise.
+	 */
+
+	public void reset(double x, double y, double heading)
+	{
+		resetX = x;
+		resetY = y;
+		resetHeading = heading;
+		resetRequested = true;
+	}
+
+	/**
+	 * Copy the latest pose into the caller's snapshot. Does not lock.
+	 * @param snapshot Snapshot to fill.
+	 */
+
+	public void read(Snapshot snapshot)
+	{
+		int		start;
+
+		do
+		{
+			start = sequence;
+
+			while ((start & 1) != 0) start = sequence;
+
+			snapshot.x = x;
+			snapshot.y = y;
+			snapshot.heading = heading;
+			snapshot.velocity = velocity;
+			snapshot.timeUs = timeUs;
+			snapshot.sequence = start;
+
+		} while (start != sequence);
+	}
+
+	// Log the current pose and the achieved update rate.
+
+	public void logStatistics()
+	{
+		long	elapsedUs = Hardware.getTime() - startUs;
+
+		Util.consoleLog("x=%.1f y=%.1f heading=%.1f updates=%d rate=%.1fhz", x, y, heading, updates,
+				elapsedUs <= 0 ? 0 : updates * 1000000.0 / elapsedUs);
+	}
+
+	/**
+	 * Check odometry accuracy against a simulated robot and log the results.
+	 * The simulated robot drives a curving path with skid steer scrub (wheels turn
+	 * the robot less than the track width predicts) while its encoders are quantized
+	 * to DriveInchesPerCount and its gyro has noise and drift, with a yaw reset part
+	 * way through. The fused odometry is run at 50hz and 200hz and compared with
+	 * encoder only odometry.
+	 * @param properties Robot properties with DriveTrackWidth and DriveInchesPerCount.
+	 */
+
+	public static void simulationCheck(Properties properties)
+	{
+		double	trackWidth = RobotProperties.getDouble(properties, "DriveTrackWidth", 24);
+		double	inchesPerCount = RobotProperties.getDouble(properties, "DriveInchesPerCount", .0184);
+
+		Util.consoleLog("track width=%.1f inches per count=%.4f", trackWidth, inchesPerCount);
+
+		simulate(properties, 50, false, trackWidth, inchesPerCount);
+		simulate(properties, 200, false, trackWidth, inchesPerCount);
+		simulate(properties, 200, true, trackWidth, inchesPerCount);
+	}
+
+	private static void simulate(Properties properties, double rateHz, boolean encoderOnly, double trackWidth,
+			double inchesPerCount)
+	{
+		final double	STEP = .0005, DURATION = 15, SCRUB = 1.25, GYRO_NOISE = .05, GYRO_DRIFT = .005;
+
+		Random		random = new Random(4450);
+		Odometry	sim = new Odometry(properties);
+		double		t = 0, nextSample = 0, left = 0, right = 0, x = 0, y = 0, heading = 0;
+		double		vLeft, vRight, turn, distance, gyroOffset = 0, gyro, error, maxError = 0;
+		int			resets = 0;
+		boolean		resetDone = false;
+
+		while (t < DURATION)
+		{
+			// Wheel speeds in inches/sec: a weave, a turn in place, then a long arc.
+
+			if (t < 6)
+			{
+				vLeft = 80 + 40 * Math.sin(1.3 * t);
+				vRight = 80 - 40 * Math.sin(1.3 * t);
+			}
+			else if (t < 8)
+			{
+				vLeft = 50;
+				vRight = -50;
+			}
+			else
+			{
+				vLeft = 100;
+				vRight = 70;
+			}
+
+			// Ground truth, exact arc over a small step.
+
+			distance = (vLeft + vRight) / 2 * STEP;
+			turn = Math.toDegrees((vLeft - vRight) * STEP / (trackWidth * SCRUB));
+
+			x += distance * Math.cos(Math.toRadians(heading + turn / 2));
+			y += distance * Math.sin(Math.toRadians(heading + turn / 2));
+			heading += turn;
+
+			left += vLeft * STEP;
+			right += vRight * STEP;
+
+			t += STEP;
+
+			if (!resetDone && t >= 10)
+			{
+				// NavX yaw reset, as done by autonomous steps and steering assist.
+
+				resetDone = true;
+				resets++;
+				gyroOffset = heading;
+			}
+
+			if (t < nextSample) continue;
+
+			// Sample with up to 20% timing jitter.
+
+			nextSample = t + (1 + .4 * (random.nextDouble() - .5)) / rateHz;
+
+			if (encoderOnly)
+				gyro = Math.toDegrees((quantize(left, inchesPerCount) - quantize(right, inchesPerCount)) / trackWidth);
+			else
+				gyro = Math.round((heading - gyroOffset + GYRO_DRIFT * t + GYRO_NOISE * random.nextGaussian())
+						* 100) / 100.0;
+
+			sim.update(quantize(left, inchesPerCount), quantize(right, inchesPerCount), gyro, encoderOnly ? 0 : resets,
+					(long) (t * 1000000));
+
+			error = Math.hypot(sim.poseX - x, sim.poseY - y);
+
+			if (error > maxError) maxError = error;
+		}
+
+		Util.consoleLog("%s %.0fhz: final error=%.2fin max error=%.2fin heading error=%.2fdeg travel=%.0fin",
+				encoderOnly ? "encoder only" : "fused", rateHz, Math.hypot(sim.poseX - x, sim.poseY - y), maxError,
+				sim.poseHeading - heading, (left + right) / 2);
+	}
+
+	private static double quantize(double distance, double inchesPerCount)
+	{
+		return Math.floor(distance / inchesPerCount) * inchesPerCount;
+	}
+
+}
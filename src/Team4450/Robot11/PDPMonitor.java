@@ -0,0 +1,53 @@
+package Team4450.Robot11;
+
+import Team4450.Lib.Util;
+import edu.wpi.first.wpilibj.PowerDistributionPanel;
+
+/**
+ * MonitorScheduler task reading the PDP. Publishes total current and an overload
+ * indicator that is on while any channel is over the channel limit, and logs
+ * each channel going over with its current. Each PDP read is a CAN read, so run
+ * it at a low rate.
+ */
+
+public class PDPMonitor implements MonitorScheduler.Task
+{
+	private static final int		CHANNELS = 16;
+
+	private final PowerDistributionPanel	pdp;
+	private final double			channelLimit;
+	private final boolean[]			overloaded = new boolean[CHANNELS];
+
+	/**
+	 * @param pdp The PDP.
+	 * @param channelLimit Channel current in amps over which a channel is overloaded.
+	 */
+
+	public PDPMonitor(PowerDistributionPanel pdp, double channelLimit)
+	{
+		this.pdp = pdp;
+		this.channelLimit = channelLimit;
+	}
+
+	public void run()
+	{
+		double	current;
+		boolean	overload = false;
+
+		Telemetry.setNumber(Telemetry.PDP_CURRENT, pdp.getTotalCurrent());
+
+		for (int channel = 0; channel < CHANNELS; channel++)
+		{
+			current = pdp.getCurrent(channel);
+
+			if (current > channelLimit && !overloaded[channel])
+				Util.consoleLog("channel %d overload %.1fA", channel, current);
+
+			overloaded[channel] = current > channelLimit;
+
+			if (overloaded[channel]) overload = true;
+		}
+
+		Telemetry.setBoolean(Telemetry.PDP_OVERLOAD, overload);
+	}
+}
@@ -0,0 +1,174 @@
+package Team4450.Robot11;
+
+/**
+ * Allocation free PID controller with feedforward, integral windup limit,
+ * low pass filtered derivative (on measurement, so setpoint changes do not
+ * kick the output) and setpoint ramping. Time step is passed in on each call
+ * so it can run at whatever rate its input arrives. Not thread safe, owned by
+ * the thread that calls calculate().
+ */
+
+public class PIDFController
+{
+	private double	kP, kI, kD, kF;
+	private double	integralLimit = Double.POSITIVE_INFINITY, derivativeFilter, rampRate;
+	private double	outputMin = -1, outputMax = 1;
+
+	private double	target, setpoint, integral, derivative, lastMeasurement, error, output;
+	private boolean	first = true;
+
+	public PIDFController(double kP, double kI, double kD, double kF)
+	{
+		setGains(kP, kI, kD, kF);
+	}
+
+	public void setGains(double kP, double kI, double kD, double kF)
+	{
+		this.kP = kP;
+		this.kI = kI;
+		this.kD = kD;
+		this.kF = kF;
+	}
+
+	/**
+	 * Limit the integral term's contribution to the output.
+	 * @param limit Max absolute value of kI * integral.
+	 */
+
+	public void setIntegralLimit(double limit)
+	{
+		integralLimit = Math.abs(limit);
+	}
+
+	/**
+	 * Set derivative low pass filter.
+	 * @param filter 0 = no filtering, towards 1 = heavier filtering.
+	 */
+
+	public void setDerivativeFilter(double filter)
+	{
+		derivativeFilter = Math.max(0, Math.min(filter, .99));
+	}
+
+	/**
+	 * Limit how fast the working setpoint moves towards the target.
+	 * @param rate Units per second, 0 = no ramping.
+	 */
+
+	public void setRampRate(double rate)
+	{
+		rampRate = Math.abs(rate);
+	}
+
+	public void setOutputRange(double min, double max)
+	{
+		outputMin = min;
+		outputMax = max;
+	}
+
+	/**
+	 * Set the target. The working setpoint ramps to it if a ramp rate is set.
+	 */
+
+	public void setTarget(double target)
+	{
+		this.target = target;
+	}
+
+	public double getTarget()
+	{
+		return target;
+	}
+
+	// Working (ramped) setpoint.
+
+	public double getSetpoint()
+	{
+		return setpoint;
+	}
+
+	public double getError()
+	{
+		return error;
+	}
+
+	public double getOutput()
+	{
+		return output;
+	}
+
+	/**
+	 * Clear integral and derivative state and jump the working setpoint to the
+	 * target.
+	 */
+
+	public void reset()
+	{
+		setpoint = target;
+		integral = derivative = error = output = 0;
+		first = true;
+	}
+
+	/**
+	 * Compute a new output.
+	 * @param measurement Current process value.
+	 * @param dt Seconds since the last call.
+	 * @return Controller output clamped to the output range.
+	 */
+
+	public double calculate(double measurement, double dt)
+	{
+		double	step, rawDerivative;
+
+		if (dt <= 0) return output;
+
+		// Ramp the working setpoint towards the target.
+
+		if (rampRate > 0)
+		{
+			step = rampRate * dt;
+
+			if (target > setpoint + step)
+				setpoint += step;
+			else if (target < setpoint - step)
+				setpoint -= step;
+			else
+				setpoint = target;
+		}
+		else
+			setpoint = target;
+
+		error = setpoint - measurement;
+
+		// Integral with windup limit.
+
+		if (kI != 0)
+		{
+			integral += error * dt;
+
+			if (kI * integral > integralLimit) integral = integralLimit / kI;
+			else if (kI * integral < -integralLimit) integral = -integralLimit / kI;
+		}
+
+		// Filtered derivative on measurement.
+
+		if (first)
+		{
+			rawDerivative = 0;
+			first = false;
+		}
+		else
+			rawDerivative = -(measurement - lastMeasurement) / dt;
+
+		derivative = derivativeFilter * derivative + (1 - derivativeFilter) * rawDerivative;
+
+		lastMeasurement = measurement;
+
+		output = kF * setpoint + kP * error + kI * integral + kD * derivative;
+
+		if (output > outputMax) output = outputMax;
+		else if (output < outputMin) output = outputMin;
+
+		return output;
+	}
+}
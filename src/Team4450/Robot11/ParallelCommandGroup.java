@@ -0,0 +1,51 @@
+package Team4450.Robot11;
+
+/**
+ * Runs commands at the same time, ticking each running command every tick in
+ * the order given. Finishes when all commands have finished. Canceling the group
+ * cancels any commands still running.
+ */
+
+public class ParallelCommandGroup extends Command
+{
+	private final Command[]	commands;
+	private int				remaining;
+
+	public ParallelCommandGroup(String name, Command... commands)
+	{
+		super(name);
+
+		this.commands = commands;
+	}
+
+	protected void initialize()
+	{
+		remaining = commands.length;
+
+		for (int i = 0; i < commands.length; i++) commands[i].start();
+	}
+
+	protected void execute()
+	{
+		for (int i = 0; i < commands.length; i++)
+			if (commands[i].isRunning() && commands[i].tick()) remaining--;
+	}
+
+	protected boolean isFinished()
+	{
+		return remaining == 0;
+	}
+
+	protected void end(boolean interrupted)
+	{
+		if (interrupted)
+			for (int i = 0; i < commands.length; i++) commands[i].cancel();
+	}
+
+	void report(int depth)
+	{
+		super.report(depth);
+
+		for (int i = 0; i < commands.length; i++) commands[i].report(depth + 1);
+	}
+}
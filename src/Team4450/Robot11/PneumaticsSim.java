@@ -0,0 +1,69 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+
+/**
+ * Simulated air system: the PCM runs the compressor below the pressure switch
+ * low setting until the high setting, fill rate falls off as pressure rises and
+ * the tanks leak slowly. The compressor current is loaded onto the simulated
+ * battery. Sensor voltage follows the REV analog pressure sensor at 5 volts.
+ */
+
+public class PneumaticsSim implements PressureSensor
+{
+	private static final double	SWITCH_LOW = 115, SWITCH_HIGH = 120, MAX_PRESSURE = 140;
+
+	private final DrivetrainSim	drivetrain;
+	private final double		fillRate, leakRate, compressorCurrent;
+
+	private double				pressure;
+	private boolean				compressorOn;
+
+	public PneumaticsSim(DrivetrainSim drivetrain, Properties properties)
+	{
+		this.drivetrain = drivetrain;
+
+		fillRate = RobotProperties.getDouble(properties, "SimCompressorFillRate", 3);
+		leakRate = RobotProperties.getDouble(properties, "SimAirLeakRate", .05);
+		compressorCurrent = RobotProperties.getDouble(properties, "SimCompressorCurrent", 10);
+		pressure = RobotProperties.getDouble(properties, "SimStartPressure", 120);
+	}
+
+	// Advance the model dt seconds.
+
+	public void step(double dt)
+	{
+		if (pressure < SWITCH_LOW)
+			compressorOn = true;
+		else if (pressure >= SWITCH_HIGH)
+			compressorOn = false;
+
+		if (compressorOn) pressure += fillRate * (1 - pressure / MAX_PRESSURE) * dt;
+
+		pressure = Math.max(0, pressure - leakRate * dt);
+
+		drivetrain.setLoadCurrent(compressorOn ? compressorCurrent : 0);
+	}
+
+	// Use air, such as a cylinder firing.
+
+	public void use(double psi)
+	{
+		pressure = Math.max(0, pressure - psi);
+	}
+
+	public boolean isCompressorOn()
+	{
+		return compressorOn;
+	}
+
+	public double getVoltage()
+	{
+		return (pressure + 25) * 5 / 250;
+	}
+
+	public double getPressure()
+	{
+		return pressure;
+	}
+}
@@ -0,0 +1,14 @@
+package Team4450.Robot11;
+
+// Air system pressure sensor.
+
+public interface PressureSensor
+{
+	// Sensor output in volts.
+
+	double getVoltage();
+
+	// Pressure in psi.
+
+	double getPressure();
+}
@@ -0,0 +1,422 @@
+package Team4450.Robot11;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import Team4450.Lib.Util;
+
+/**
+ * Deterministic match replay. Feeds a FlightRecorder recording back through the
+ * real control code on a VirtualClock, tick by tick, and compares what the code
+ * commands now with what it commanded in the match:
+ *
+ * Teleop ticks run the recorded raw sticks through a new DriveLoop, the loop
+ * Teleop runs (input poll, stick shaping, TeleopDrive tank, alternate mode and
+ * NavX steering assist through the HeadingController), with the recorded
+ * alternate drive mode and auto target. Ticks where auto target had the drive
+ * are not driven. The load shedder is not updated, so no work is shed.
+ *
+ * Autonomous rebuilds the AutoPlan from the program, alliance, location and game
+ * message saved in the header and ticks its command on a CommandScheduler.
+ *
+ * Each tick the recorded NavX, encoder and pressure values of that tick are what
+ * the code reads, and time is the recorded time. Drive outputs go to a stub
+ * drive doing the DifferentialDrive math (DrivetrainSim, never stepped). Recorded
+ * and replayed shaped sticks and drive powers are diffed per channel, along with
+ * the steering assist state. Under Talon closed loop the recorded powers are the
+ * commanded velocities as a fraction of max, compared with the replayed open
+ * loop powers. Closed loop straight drive ticks are driven but not compared, as
+ * the heading hold ran on the Talons.
+ *
+ * Replay runs as fast as the code does, so it also measures the control code's
+ * throughput: time per tick and how many times faster than real time. Give a
+ * pass count to repeat the replay so the JIT warms up, results are from the
+ * last pass.
+ *
+ *   ant -f benchmark/build.xml replay -Dreplay.args="file.rec [properties file] [passes]"
+ *
+ * Like the Simulator it runs on a desktop JVM with Telemetry going to
+ * Telemetry.DISCARD and the benchmark stand ins for Util and LCD on the class
+ * path, which the replay target sets up.
+ *
+ * Properties must be the ones used in the match (shaping, heading PID, profile
+ * settings) for outputs to match. The heading controller runs once per tick on
+ * the recorded yaw instead of on every NavX update, so steering assist outputs
+ * can differ a little where yaw changes fast. Differences over ReplayTolerance
+ * are counted.
+ */
+
+public class Replay
+{
+	private static final double	CONTROL_PERIOD = .020;
+
+	// Channels compared.
+	private static final int	LEFT_Y = 0, RIGHT_Y = 1, LEFT_POWER = 2, RIGHT_POWER = 3, CHANNELS = 4;
+	private static final String[]	CHANNEL_NAMES = {"leftY", "rightY", "leftPower", "rightPower"};
+
+	// The recorded sensor values of the current tick as the Hardware backends.
+	// Drive commands go through the DifferentialDrive math of a DrivetrainSim.
+
+	private static class RecordedSensors implements DriveTrain, HeadingSensor, PressureSensor
+	{
+		private final DrivetrainSim		drivetrain;
+		private FlightRecorder.Record	record;
+
+		RecordedSensors(Properties properties)
+		{
+			drivetrain = new DrivetrainSim(properties);
+		}
+
+		void set(FlightRecorder.Record record)
+		{
+			this.record = record;
+		}
+
+		public void tankDrive(double leftPower, double rightPower, boolean squaredInputs)
+		{
+			drivetrain.tankDrive(leftPower, rightPower, squaredInputs);
+		}
+
+		public void curvatureDrive(double speed, double rotation, boolean quickTurn)
+		{
+			drivetrain.curvatureDrive(speed, rotation, quickTurn);
+		}
+
+		public double getLeftDistance() { return record.leftDistance; }
+
+		public double getRightDistance() { return record.rightDistance; }
+
+		public double getLeftPower() { return drivetrain.getLeftPower(); }
+
+		public double getRightPower() { return drivetrain.getRightPower(); }
+
+		// Recorded yaw already includes any reset the code did in the match.
+
+		public double getYaw() { return record.yaw; }
+
+		public double getTotalYaw() { return record.totalYaw; }
+
+		public double getYawRate() { return record.yawRate; }
+
+		public double getHeading()
+		{
+			double	heading = record.totalYaw % 360;
+
+			return heading < 0 ? heading + 360 : heading;
+		}
+
+		public void resetYaw() {}
+
+		public void setHeading(double heading) {}
+
+		public double getVoltage() { return (record.pressure + 25) * 5 / 250; }
+
+		public double getPressure() { return record.pressure; }
+	}
+
+	private final Properties			properties;
+	private final FlightRecorder.Recording	recording;
+	private final VirtualClock			clock;
+	private final NavXSampler			navxSampler = NavXSampler.getInstance();
+	private final HeadingController		headingController;
+	private final RecordedSensors		sensors;
+	private final InputService			inputService = new InputService();
+	private final LoadShedder			shedder = new LoadShedder("Replay", CONTROL_PERIOD);
+
+	// The record being replayed, read by the drive loop as the driver's input.
+	private FlightRecorder.Record		current;
+
+	// Teleop state, new for each teleop segment.
+	private TeleopDrive					teleopDrive;
+	private DriveLoop					driveLoop;
+
+	// Autonomous state.
+	private CommandScheduler			scheduler;
+
+	// Results of the last pass.
+	private final double[]				maxDiff = new double[CHANNELS], sumDiff = new double[CHANNELS];
+	private final int[]					count = new int[CHANNELS], overCount = new int[CHANNELS];
+	private final long[]				firstOverUs = new long[CHANNELS];
+	private int							compared, skipped, assistMismatches, autonomousTicks, teleopTicks;
+	private long						firstAssistMismatchUs, tickNs, maxTickNs;
+	private final double				tolerance;
+
+	public static void main(String[] args) throws IOException
+	{
+		Properties	properties = new Properties();
+		String		fileName = args.length > 1 ? args[1] : "Competition Robot Properties/Robot.properties";
+		int			passes = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+		Replay		replay;
+
+		if (args.length < 1)
+		{
+			System.err.println("usage: Replay file.rec [properties file] [passes]");
+			System.exit(2);
+		}
+
+		FileInputStream	input = new FileInputStream(fileName);
+
+		try
+		{
+			properties.load(input);
+		}
+		finally
+		{
+			input.close();
+		}
+
+		Telemetry.setSink(Telemetry.DISCARD);
+
+		replay = new Replay(FlightRecorder.read(args[0]), properties);
+
+		Util.consoleLog("%s event=%s type=%s match=%d program=%d alliance=%s location=%d msg=%s records=%d properties=%s",
+				args[0], replay.recording.eventName, replay.recording.matchType, replay.recording.matchNumber,
+				replay.recording.program, replay.recording.alliance, replay.recording.location,
+				replay.recording.gameMessage, replay.recording.records.length, fileName);
+
+		for (int pass = 0; pass < passes; pass++) replay.run();
+
+		replay.report();
+	}
+
+	public Replay(FlightRecorder.Recording recording, Properties properties)
+	{
+		this.recording = recording;
+		this.properties = properties;
+
+		tolerance = RobotProperties.getDouble(properties, "ReplayTolerance", .02);
+
+		clock = new VirtualClock(recording.records.length > 0 ? recording.records[0].timeUs : 1000000, 1000);
+
+		Hardware.clock = clock;
+
+		sensors = new RecordedSensors(properties);
+
+		Hardware.drive = sensors;
+		Hardware.navx = sensors;
+		Hardware.pressure = sensors;
+
+		headingController = HeadingController.getInstance(properties);
+	}
+
+	/**
+	 * Replay the whole recording once, collecting the differences and tick times.
+	 */
+
+	public void run()
+	{
+		FlightRecorder.Record[]	records = recording.records;
+		FlightRecorder.Record	record;
+		long					offsetUs = 0, startNs, elapsedNs;
+		byte					mode = 0;
+
+		reset();
+
+		for (int i = 0; i < records.length; i++)
+		{
+			record = records[i];
+
+			// Recording continues across a reboot with time starting over. Keep our
+			// time moving forward.
+
+			if (record.timeUs + offsetUs < clock.getTimeUs()) offsetUs = clock.getTimeUs() - record.timeUs;
+
+			clock.advance(record.timeUs + offsetUs - clock.getTimeUs());
+
+			startNs = System.nanoTime();
+
+			sensors.set(record);
+
+			if (record.mode != mode || (i > 0 && record.sequence != records[i - 1].sequence + 1))
+				startSegment(record);
+
+			mode = record.mode;
+
+			if (mode == FlightRecorder.AUTONOMOUS)
+				autonomousTick(record);
+			else if (mode == FlightRecorder.TELEOP)
+				teleopTick(record);
+
+			elapsedNs = System.nanoTime() - startNs;
+
+			tickNs += elapsedNs;
+
+			if (elapsedNs > maxTickNs) maxTickNs = elapsedNs;
+		}
+
+		if (teleopDrive != null) teleopDrive.stop();
+
+		if (scheduler != null) scheduler.cancelAll();
+	}
+
+	private void reset()
+	{
+		for (int i = 0; i < CHANNELS; i++)
+		{
+			maxDiff[i] = sumDiff[i] = 0;
+			count[i] = overCount[i] = 0;
+			firstOverUs[i] = 0;
+		}
+
+		compared = skipped = assistMismatches = autonomousTicks = teleopTicks = 0;
+		firstAssistMismatchUs = tickNs = maxTickNs = 0;
+	}
+
+	// Start of a mode or a gap in the recording: new teleop or autonomous state as
+	// at the start of the mode.
+
+	private void startSegment(FlightRecorder.Record record)
+	{
+		AutoPlan		plan;
+		LatencyTracer	tracer;
+
+		if (teleopDrive != null) teleopDrive.stop();
+
+		if (scheduler != null) scheduler.cancelAll();
+
+		teleopDrive = null;
+		driveLoop = null;
+		scheduler = null;
+
+		headingController.disable();
+		navxSampler.refresh();
+
+		if (record.mode == FlightRecorder.TELEOP)
+		{
+			tracer = new LatencyTracer(false);
+
+			teleopDrive = new TeleopDrive(null, headingController, tracer);
+
+			// The utility stick is not recorded.
+
+			driveLoop = new DriveLoop(new DriveLoop.Input()
+			{
+				public void poll() { inputService.poll(); }
+
+				public double getLeftY() { return current.rawLeftY; }
+
+				public double getRightY() { return current.rawRightY; }
+
+				public double getLeftX() { return current.rawLeftX; }
+
+				public double getRightX() { return current.rawRightX; }
+
+				public double getUtilityX() { return 0; }
+			}, shedder, teleopDrive, tracer, tracer.addPath("Stick", true), properties, CONTROL_PERIOD);
+		}
+		else if (record.mode == FlightRecorder.AUTONOMOUS && recording.program >= 0)
+		{
+			plan = AutoPlan.build(recording.program, recording.alliance, recording.location, recording.gameMessage,
+					properties);
+
+			scheduler = new CommandScheduler(new ControlLoop("Replay", CONTROL_PERIOD));
+			scheduler.schedule(plan.command);
+		}
+	}
+
+	private void autonomousTick(FlightRecorder.Record record)
+	{
+		autonomousTicks++;
+
+		if (scheduler == null) return;
+
+		navxSampler.refresh();
+
+		// Once the plan finishes nothing drives, the outputs stay at the last command.
+
+		if (!scheduler.isIdle()) scheduler.tick();
+
+		compare(record, LEFT_POWER, sensors.getLeftPower(), record.leftPower);
+		compare(record, RIGHT_POWER, sensors.getRightPower(), record.rightPower);
+
+		compared++;
+	}
+
+	private void teleopTick(FlightRecorder.Record record)
+	{
+		teleopTicks++;
+
+		// The heading controller ran on the NavX thread before this tick.
+
+		navxSampler.refresh();
+		headingController.update();
+
+		current = record;
+
+		driveLoop.setAltDriveMode((record.flags & FlightRecorder.ALT_DRIVE_MODE) != 0);
+		driveLoop.setAutoTarget((record.flags & FlightRecorder.AUTO_TARGET) != 0);
+
+		driveLoop.tick();
+
+		compare(record, LEFT_Y, driveLoop.getLeftY(), record.leftY);
+		compare(record, RIGHT_Y, driveLoop.getRightY(), record.rightY);
+
+		if ((record.flags & FlightRecorder.AUTO_TARGET) != 0)
+		{
+			skipped++;
+			return;
+		}
+
+		if (teleopDrive.isSteeringAssist() != ((record.flags & FlightRecorder.STEERING_ASSIST) != 0))
+			if (assistMismatches++ == 0) firstAssistMismatchUs = record.timeUs;
+
+		if ((record.flags & FlightRecorder.CLOSED_LOOP) != 0 && (record.flags & FlightRecorder.STEERING_ASSIST) != 0)
+		{
+			skipped++;
+			return;
+		}
+
+		compare(record, LEFT_POWER, sensors.getLeftPower(), record.leftPower);
+		compare(record, RIGHT_POWER, sensors.getRightPower(), record.rightPower);
+
+		compared++;
+	}
+
+	private void compare(FlightRecorder.Record record, int channel, double replayed, double recorded)
+	{
+		double	diff = Math.abs(replayed - recorded);
+
+		count[channel]++;
+		sumDiff[channel] += diff;
+
+		if (diff > maxDiff[channel]) maxDiff[channel] = diff;
+
+		if (diff > tolerance && overCount[channel]++ == 0) firstOverUs[channel] = record.timeUs;
+	}
+
+	// Time from the first record in seconds.
+
+	private double seconds(long timeUs)
+	{
+		return (timeUs - recording.records[0].timeUs) / 1000000.0;
+	}
+
+	/**
+	 * Log the differences and throughput of the last pass.
+	 */
+
+	public void report()
+	{
+		int		ticks = autonomousTicks + teleopTicks;
+		double	recordedSeconds = ticks * CONTROL_PERIOD, wallSeconds = tickNs / 1000000000.0;
+
+		Util.consoleLog("ticks=%d autonomous=%d teleop=%d compared=%d skipped=%d tolerance=%.3f", ticks,
+				autonomousTicks, teleopTicks, compared, skipped, tolerance);
+
+		if (autonomousTicks > 0 && recording.program < 0)
+			Util.consoleLog("no auto program in the recording, autonomous not replayed");
+
+		for (int i = 0; i < CHANNELS; i++)
+			Util.consoleLog("%-10s max diff=%.4f mean diff=%.4f over=%d first over=%s", CHANNEL_NAMES[i], maxDiff[i],
+					count[i] == 0 ? 0 : sumDiff[i] / count[i], overCount[i],
+					overCount[i] == 0 ? "none" : String.format("%.2fs", seconds(firstOverUs[i])));
+
+		Util.consoleLog("steering assist mismatches=%d first=%s", assistMismatches,
+				assistMismatches == 0 ? "none" : String.format("%.2fs", seconds(firstAssistMismatchUs)));
+
+		if (ticks > 0)
+			Util.consoleLog("%.0fns/tick max=%.0fns %.0f ticks/s %.0fx real time", (double) tickNs / ticks,
+					(double) maxTickNs, ticks / wallSeconds, recordedSeconds / wallSeconds);
+	}
+}
@@ -31,11 +31,11 @@ public class Robot extends SampleRobot
   public boolean		isClone = false, isComp = false;
     	
   DriverStation.Alliance	alliance;
+  DriverStation.MatchType	matchType;
   int                       location, matchNumber;
   String					eventName, gameMessage;
+  long						autoStartUs;
     
-  Thread               	monitorBatteryThread, monitorPDPThread;
-  MonitorCompressor		monitorCompressorThread;
   CameraFeed			cameraThread;
       
   // Constructor.
@@ -69,59 +69,212 @@ public class Robot extends SampleRobot
 
    		LCD.clearAll();
    		LCD.printLine(1, "Mode: RobotInit");
+
+   		// Each init step with the steps it needs done first and how long it may take.
+   		// Independent steps run in parallel, a step that fails or times out skips the
+   		// steps that depend on it. See the startup timeline in the log.
+   		
+   		StartupSequence		startup = new StartupSequence();
+   		StartupSequence.Step	properties, talons, drive, navx;
+   		StartupSequence.Step[]	talonInits = new StartupSequence.Step[TalonStatusSampler.TALON_COUNT + 1];
       
    		// Read properties file from RoboRio "disk".
       
-   		robotProperties = Util.readProperties();
+   		properties = startup.add("Properties", 2, new StartupSequence.Body()
+   		{
+   			public void run() throws Exception
+   			{
+   				robotProperties = Util.readProperties();
       
-   		// Is this the competition or clone robot?
+   				// Is this the competition or clone robot?
+   		
+   				if (robotProperties.getProperty("RobotId").equals("comp"))
+   					isComp = true;
+   				else
+   					isClone = true;
+   			}
+   		});
+
+   		// Set how often changed dashboard values are pushed to the DS.
    		
-		if (robotProperties.getProperty("RobotId").equals("comp"))
-			isComp = true;
-		else
-			isClone = true;
+   		startup.add("Telemetry", 2, new StartupSequence.Body()
+   		{
+   			public void run()
+   			{
+   				Telemetry.setFlushInterval(RobotProperties.getDouble(robotProperties, "TelemetryFlushInterval", .1));
 
-   		SmartDashboard.putString("Program", PROGRAM_NAME);
+   				Telemetry.setString(Telemetry.PROGRAM, PROGRAM_NAME);
    		
-   		SmartDashboard.putBoolean("CompressorEnabled", Boolean.parseBoolean(robotProperties.getProperty("CompressorEnabledByDefault")));
+   				Telemetry.setBoolean(Telemetry.COMPRESSOR_ENABLED, RobotProperties.getBoolean(robotProperties, "CompressorEnabledByDefault", false));
+
+   				Telemetry.flushNow();
+   			}
+   		}, properties);
 
    		// Reset PDB & PCM sticky faults.
       
-   		Devices.PDP.clearStickyFaults();
-   		Devices.compressor.clearAllPCMStickyFaults();
+   		startup.add("PDP faults", 2, new StartupSequence.Body()
+   		{
+   			public void run() { Devices.PDP.clearStickyFaults(); }
+   		});
+
+   		startup.add("PCM faults", 2, new StartupSequence.Body()
+   		{
+   			public void run() { Devices.compressor.clearAllPCMStickyFaults(); }
+   		});
+   		
+   		// Configure motor controllers and RobotDrive. Each Talon's init waits on a CAN
+   		// read, so the six are initialized in parallel.
+   		
+   		talons = startup.add("Create Talons", 2, new StartupSequence.Body()
+   		{
+   			public void run() { Devices.CreateCANTalons(); }
+   		});
+
+   		talonInits[0] = properties;
+
+   		for (int i = 0; i < TalonStatusSampler.TALON_COUNT; i++)
+   		{
+   			final int	index = i;
+
+   			talonInits[i + 1] = startup.add("Talon " + (i + 1), 2, new StartupSequence.Body()
+   			{
+   				public void run() { Devices.InitializeCANTalon(Devices.getDriveTalons()[index]); }
+   			}, talons);
+   		}
+   		
+   		drive = startup.add("Drive", 2, new StartupSequence.Body()
+   		{
+   			public void run()
+   			{
+   				Devices.ConfigureCANTalonDrive(
+   						Devices.DriveTopology.valueOf(RobotProperties.getString(robotProperties, "DriveTopology", "GROUP").toUpperCase()),
+   						RobotProperties.getInt(robotProperties, "FollowerStatusPeriod", 100));
    		
-   		// Configure motor controllers and RobotDrive.
+   				Devices.InitializeClosedLoopDrive(robotProperties);
    		
-   		Devices.InitializeCANTalonDrive();
+   				Devices.ConfigureDriveEncoders(robotProperties);
 		
-   		Devices.robotDrive.stopMotor();
-   		Devices.robotDrive.setSafetyEnabled(false);
-   		Devices.robotDrive.setExpiration(0.1);
+   				Devices.robotDrive.stopMotor();
+   				Devices.robotDrive.setSafetyEnabled(false);
+   				Devices.robotDrive.setExpiration(0.1);
+   			}
+   		}, talonInits);
+   		
+   		// Start background sampling of drive Talon voltage, current and temperature.
+   		
+   		startup.add("Talon sampler", 2, new StartupSequence.Body()
+   		{
+   			public void run()
+   			{
+   				TalonStatusSampler talonStatusSampler = TalonStatusSampler.getInstance();
+   				talonStatusSampler.setInterval(RobotProperties.getDouble(robotProperties, "TalonStatusInterval", .25));
+   				talonStatusSampler.start();
+   			}
+   		}, properties, drive);
              
    		// Create NavX object here so it has time to calibrate before we
    		// use it. Takes 10 seconds. Must appear before CamerFeed is created.
    		
-   		Devices.navx = NavX.getInstance(NavX.PortType.SPI);
+   		navx = startup.add("NavX", 5, new StartupSequence.Body()
+   		{
+   			public void run()
+   			{
+   				Devices.navx = NavX.getInstance(NavX.PortType.SPI);
+   				Hardware.navx = new NavXHeadingSensor(Devices.navx);
    		
-   		Devices.navx.dumpValuesToNetworkTables();
+   				Devices.navx.dumpValuesToNetworkTables();
 
-   		// Start the battery, compressor, PDP and camera feed monitoring Tasks.
+   				// Sample all NavX values together on each NavX update.
+   		
+   				NavXSampler.getInstance().startCallbacks();
+   			}
+   		});
 
-   		monitorBatteryThread = MonitorBattery.getInstance();
-   		monitorBatteryThread.start();
+   		// Calibration runs on the NavX, we don't wait for it, just log when it is done.
+   		
+   		startup.addBackground("NavX calibration", 20, new StartupSequence.Body()
+   		{
+   			public void run()
+   			{
+   				long	startUs = Hardware.getTime();
 
-   		monitorCompressorThread = MonitorCompressor.getInstance(Devices.pressureSensor);
-   		monitorCompressorThread.setDelay(1.0);
-   		monitorCompressorThread.SetLowPressureAlarm(50);
-   		monitorCompressorThread.start();
+   				while (Devices.navx.getAHRS().isCalibrating() && Hardware.getTime() - startUs < 20000000)
+   					Hardware.sleep(50000);
+   			}
+   		}, navx);
    		
-   		//monitorPDPThread = MonitorPDP.getInstance(ds, PDP);
-   		//monitorPDPThread.start();
+   		// Heading hold PID runs on its own thread at the NavX update rate.
+   		
+   		startup.add("Heading controller", 2, new StartupSequence.Body()
+   		{
+   			public void run() { HeadingController.getInstance(robotProperties).start(); }
+   		}, properties, navx);
+
+   		// Fused encoder and NavX pose estimate, also at the NavX update rate.
+   		
+   		startup.add("Odometry", 2, new StartupSequence.Body()
+   		{
+   			public void run() { Odometry.getInstance(robotProperties).start(); }
+   		}, properties, navx, drive);
+
+   		// Per tick binary recording of Teleop and Autonomous, one ring file per match.
+   		
+   		startup.add("Flight recorder", 2, new StartupSequence.Body()
+   		{
+   			public void run() { FlightRecorder.getInstance(robotProperties); }
+   		}, properties);
+
+   		// Start the battery, compressor and PDP monitoring tasks, all on one low
+   		// priority thread. Period, priority and run time budget for each.
+
+   		startup.add("Monitors", 2, new StartupSequence.Body()
+   		{
+   			public void run()
+   			{
+   				MonitorScheduler	monitors = MonitorScheduler.getInstance();
+   				CompressorMonitor	compressorMonitor = new CompressorMonitor(Devices.pressureSensor, Devices.compressor, 50);
+
+   				monitors.add("Compressor", 1.0, 3, .001, compressorMonitor);
+   				monitors.add("Battery", 1.0, 2, .001,
+   						new BatteryMonitor(RobotProperties.getDouble(robotProperties, "LowBatteryVoltage", 11.5)));
+
+   				if (RobotProperties.getBoolean(robotProperties, "MonitorPDP", true))
+   					monitors.add("PDP", 1.0, 1, .003,
+   							new PDPMonitor(Devices.PDP, RobotProperties.getDouble(robotProperties, "PDPChannelLimit", 40)));
+
+   				// Create the match's flight recorder file while disabled, once the DS has
+   				// the event and match, so autonomous does not wait for it.
+
+   				monitors.add("Flight recorder", 1.0, 0, .050, new MonitorScheduler.Task()
+   				{
+   					public void run()
+   					{
+   						FlightRecorder	recorder = FlightRecorder.getInstance();
+
+   						if (recorder != null && isDisabled())
+   							recorder.open(Devices.ds.getEventName(), Devices.ds.getMatchType(), Devices.ds.getMatchNumber());
+   					}
+   				});
+
+   				monitors.start();
+
+   				Hardware.pressure = compressorMonitor;
+   			}
+   		}, properties);
 
    		// Start camera server using our class for usb cameras.
       
-       	cameraThread = CameraFeed.getInstance(); 
-       	cameraThread.start();
+   		startup.add("Camera", 5, new StartupSequence.Body()
+   		{
+   			public void run()
+   			{
+   				cameraThread = CameraFeed.getInstance(); 
+   				cameraThread.start();
+   			}
+   		}, navx);
+   		
+   		if (!startup.run()) LCD.printLine(2, "Startup errors, see log");
    		
    		Util.consoleLog("end");
     }
@@ -138,16 +291,24 @@ public class Robot extends SampleRobot
 
 		  LCD.printLine(1, "Mode: Disabled");
 
+		  // Build every autonomous program variant in the background while disabled.
+		  
+		  AutoPlanner autoPlanner = AutoPlanner.getInstance(this);
+		  
+		  if (autoPlanner.getState() == Thread.State.NEW) autoPlanner.start();
+
 		  // Reset driver station LEDs.
 
-		  SmartDashboard.putBoolean("Disabled", true);
-		  SmartDashboard.putBoolean("Auto Mode", false);
-		  SmartDashboard.putBoolean("Teleop Mode", false);
-		  SmartDashboard.putBoolean("FMS", Devices.ds.isFMSAttached());
-		  SmartDashboard.putBoolean("AutoTarget", false);
-		  SmartDashboard.putBoolean("TargetLocked", false);
-		  SmartDashboard.putBoolean("Overload", false);
-		  SmartDashboard.putNumber("AirPressure", 0);
+		  Telemetry.setBoolean(Telemetry.DISABLED, true);
+		  Telemetry.setBoolean(Telemetry.AUTO_MODE, false);
+		  Telemetry.setBoolean(Telemetry.TELEOP_MODE, false);
+		  Telemetry.setBoolean(Telemetry.FMS, Devices.ds.isFMSAttached());
+		  Telemetry.setBoolean(Telemetry.AUTO_TARGET, false);
+		  Telemetry.setBoolean(Telemetry.TARGET_LOCKED, false);
+		  Telemetry.setBoolean(Telemetry.OVERLOAD, false);
+		  Telemetry.setNumber(Telemetry.AIR_PRESSURE, 0);
+		  
+		  Telemetry.flushNow();
 		  
 		  Util.consoleLog("end");
 	  }
@@ -158,15 +319,22 @@ public class Robot extends SampleRobot
   
   public void autonomous() 
   {
+      // Null if their startup step was skipped.
+      FlightRecorder	recorder = FlightRecorder.getInstance();
+      Odometry		odometry = Odometry.getInstance();
+
       try
       {
+    	  autoStartUs = Hardware.getTime();
+    	  
     	  Util.consoleLog();
 
     	  LCD.clearAll();
     	  LCD.printLine(1, "Mode: Autonomous");
             
-    	  SmartDashboard.putBoolean("Disabled", false);
-    	  SmartDashboard.putBoolean("Auto Mode", true);
+    	  Telemetry.setBoolean(Telemetry.DISABLED, false);
+    	  Telemetry.setBoolean(Telemetry.AUTO_MODE, true);
+    	  Telemetry.flushNow();
         
     	  // Make available the alliance (red/blue) and staring position as
     	  // set on the driver station or FMS.
@@ -174,6 +342,7 @@ public class Robot extends SampleRobot
     	  alliance = Devices.ds.getAlliance();
     	  location = Devices.ds.getLocation();
     	  eventName = Devices.ds.getEventName();
+    	  matchType = Devices.ds.getMatchType();
     	  matchNumber = Devices.ds.getMatchNumber();
     	  gameMessage = Devices.ds.getGameSpecificMessage();
 
@@ -183,16 +352,42 @@ public class Robot extends SampleRobot
     	  // Reset persistent fault flags in control system modules.
     	  Devices.PDP.clearStickyFaults();
     	  Devices.compressor.clearAllPCMStickyFaults();
+    	  
+    	  // Normally already opened while disabled.
+    	  
+    	  if (recorder != null) recorder.open(eventName, matchType, matchNumber);
              
     	  // Start autonomous process contained in the Autonomous class.
         
-    	  Autonomous autonomous = new Autonomous(this);
+    	  TalonStatusSampler.getInstance().resetCANStatistics();
+    	  MonitorScheduler.getInstance().resetStatistics();
+    	  
+    	  // Pose is measured from where we start autonomous.
+    	  
+    	  if (odometry != null) odometry.reset(0, 0, 0);
+
+    	  // Pick up the plan for the selected program, built while we were disabled.
+    	  
+    	  AutoPlan plan = AutoPlanner.getInstance(this).getPlan((int) SmartDashboard.getNumber("AutoProgramSelect", 0),
+    			  alliance, location, gameMessage);
+    	  
+    	  if (recorder != null) recorder.setAutoPlan(plan);
+
+    	  Autonomous autonomous = new Autonomous(this, plan);
         
     	  autonomous.execute();
         
+    	  autonomous.getControlLoop().dumpHistograms();
+    	  TalonStatusSampler.getInstance().logCANStatistics();
+    	  if (odometry != null) odometry.logStatistics();
+    	  MonitorScheduler.getInstance().logStatistics();
+    	  if (recorder != null) recorder.flush();
+
     	  autonomous.dispose();
     	  
-    	  SmartDashboard.putBoolean("Auto Mode", false);
+    	  Telemetry.setBoolean(Telemetry.AUTO_MODE, false);
+    	  Telemetry.flushNow();
+    	  
     	  Util.consoleLog("end");
       }
       catch (Exception e) {Util.logException(e);}
@@ -202,6 +397,11 @@ public class Robot extends SampleRobot
   
   public void operatorControl() 
   {
+      // Null if their startup step was skipped.
+      HeadingController	headingController = HeadingController.getInstance();
+      FlightRecorder	recorder = FlightRecorder.getInstance();
+      Odometry			odometry = Odometry.getInstance();
+
       try
       {
     	  Util.consoleLog();
@@ -209,18 +409,20 @@ public class Robot extends SampleRobot
     	  LCD.clearAll();
       	  LCD.printLine(1, "Mode: Teleop");
             
-      	  SmartDashboard.putBoolean("Disabled", false);
-      	  SmartDashboard.putBoolean("Teleop Mode", true);
+      	  Telemetry.setBoolean(Telemetry.DISABLED, false);
+      	  Telemetry.setBoolean(Telemetry.TELEOP_MODE, true);
+      	  Telemetry.flushNow();
         
       	  alliance = Devices.ds.getAlliance();
       	  location = Devices.ds.getLocation();
     	  eventName = Devices.ds.getEventName();
+    	  matchType = Devices.ds.getMatchType();
     	  matchNumber = Devices.ds.getMatchNumber();
     	  gameMessage = Devices.ds.getGameSpecificMessage();
         
-          Util.consoleLog("Alliance=%s, Location=%d, FMS=%b event=%s match=%d msg=%s", 
-        		  		   alliance.name(), location, Devices.ds.isFMSAttached(), eventName, matchNumber, 
-        		  		   gameMessage);
+          Util.consoleLog("Alliance=%s, Location=%d, FMS=%b event=%s match=%s %d msg=%s", 
+        		  		   alliance.name(), location, Devices.ds.isFMSAttached(), eventName, matchType.name(),
+        		  		   matchNumber, gameMessage);
 
     	  // Reset persistent fault flags in control system modules.
           Devices.PDP.clearStickyFaults();
@@ -231,10 +433,22 @@ public class Robot extends SampleRobot
         
           // Start operator control process contained in the Teleop class.
         
+          TalonStatusSampler.getInstance().resetCANStatistics();
+          if (headingController != null) headingController.resetStatistics();
+          MonitorScheduler.getInstance().resetStatistics();
+          if (recorder != null) recorder.open(eventName, matchType, matchNumber);
+
           Teleop teleOp = new Teleop(this);
        
           teleOp.OperatorControl();
         
+          teleOp.getControlLoop().dumpHistograms();
+          TalonStatusSampler.getInstance().logCANStatistics();
+          if (headingController != null) headingController.logStatistics();
+          if (odometry != null) odometry.logStatistics();
+          MonitorScheduler.getInstance().logStatistics();
+          if (recorder != null) recorder.flush();
+
           teleOp.dispose();
         	
           Util.consoleLog("end");
@@ -242,8 +456,24 @@ public class Robot extends SampleRobot
        catch (Exception e) {Util.logException(e);} 
   }
     
+  // Test mode runs benchmarks of code we want to time on the real roboRIO.
+  
   public void test() 
   {
+	  try
+	  {
+		  Util.consoleLog();
+		  
+		  LCD.clearAll();
+		  LCD.printLine(1, "Mode: Test");
+		  
+		  MotionProfile.benchmark(2000);
+		  
+		  Odometry.simulationCheck(robotProperties);
+		  
+		  Util.consoleLog("end");
+	  }
+	  catch (Exception e) {Util.logException(e);}
   }
 
   // Start usb camera server for single camera.
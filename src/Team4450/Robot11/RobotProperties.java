@@ -0,0 +1,80 @@
+package Team4450.Robot11;
+
+import java.util.Properties;
+
+/**
+ * Typed reads of values from Robot.properties, as loaded by Util.readProperties().
+ * Values are trimmed before parsing, so trailing blanks in the file are ignored.
+ * Plain Java so robot, simulator and replay code can all use it.
+ */
+
+public class RobotProperties
+{
+	private RobotProperties()
+	{
+	}
+
+	/**
+	 * Return a property as a double.
+	 * @param properties Robot properties.
+	 * @param key Property name.
+	 * @param defaultValue Returned when the property is not set.
+	 */
+
+	public static double getDouble(Properties properties, String key, double defaultValue)
+	{
+		String value = properties.getProperty(key);
+
+		if (value == null) return defaultValue;
+
+		return Double.parseDouble(value.trim());
+	}
+
+	/**
+	 * Return a property as an int.
+	 * @param properties Robot properties.
+	 * @param key Property name.
+	 * @param defaultValue Returned when the property is not set.
+	 */
+
+	public static int getInt(Properties properties, String key, int defaultValue)
+	{
+		String value = properties.getProperty(key);
+
+		if (value == null) return defaultValue;
+
+		return Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * Return a property as a boolean, true if it is "true" in any case.
+	 * @param properties Robot properties.
+	 * @param key Property name.
+	 * @param defaultValue Returned when the property is not set.
+	 */
+
+	public static boolean getBoolean(Properties properties, String key, boolean defaultValue)
+	{
+		String value = properties.getProperty(key);
+
+		if (value == null) return defaultValue;
+
+		return Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * Return a property as a trimmed string.
+	 * @param properties Robot properties.
+	 * @param key Property name.
+	 * @param defaultValue Returned when the property is not set.
+	 */
+
+	public static String getString(Properties properties, String key, String defaultValue)
+	{
+		String value = properties.getProperty(key);
+
+		if (value == null) return defaultValue;
+
+		return value.trim();
+	}
+}
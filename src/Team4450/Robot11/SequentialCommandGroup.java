@@ -0,0 +1,54 @@
+package Team4450.Robot11;
+
+/**
+ * Runs commands one after another. When a command finishes the next one is
+ * started and ticked in the same tick, so no control tick is lost between steps.
+ * Canceling the group cancels the running command.
+ */
+
+public class SequentialCommandGroup extends Command
+{
+	private final Command[]	commands;
+	private int				current;
+
+	public SequentialCommandGroup(String name, Command... commands)
+	{
+		super(name);
+
+		this.commands = commands;
+	}
+
+	protected void initialize()
+	{
+		current = 0;
+
+		if (commands.length > 0) commands[0].start();
+	}
+
+	protected void execute()
+	{
+		while (current < commands.length && commands[current].tick())
+		{
+			current++;
+
+			if (current < commands.length) commands[current].start();
+		}
+	}
+
+	protected boolean isFinished()
+	{
+		return current >= commands.length;
+	}
+
+	protected void end(boolean interrupted)
+	{
+		if (interrupted && current < commands.length) commands[current].cancel();
+	}
+
+	void report(int depth)
+	{
+		super.report(depth);
+
+		for (int i = 0; i < commands.length; i++) commands[i].report(depth + 1);
+	}
+}
@@ -0,0 +1,278 @@
+package Team4450.Robot11;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import Team4450.Lib.Util;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Headless simulator. Installs DrivetrainSim, NavXSim and PneumaticsSim as the
+ * Hardware backends with a VirtualClock and runs the real autonomous plans
+ * (AutoPlan commands on a CommandScheduler) and teleop driving loop (DriveLoop
+ * on a ControlLoop) against them as fast as the JVM can go.
+ * Physics steps every 1ms and simulated NavX updates every 5ms drive the heading
+ * controller and odometry as the NavX callbacks do on the robot, all from the
+ * clock's step listener while the control loop sleeps. Everything runs on one
+ * thread in virtual time, so runs are repeatable.
+ *
+ * Runs on a desktop JVM without the HAL or NetworkTables. Telemetry goes to
+ * Telemetry.DISCARD instead of the SmartDashboard. RobotLib logging writes the
+ * robot log file, so the benchmark stand ins for Util and LCD must be ahead of
+ * the robot jars on the class path. The benchmark build sets this up:
+ *
+ *   ant -f benchmark/build.xml simulate [-Dsim.args="properties file"]
+ *
+ * Logs the result of each run (ground truth and odometry pose, current and
+ * battery sag) and how many times faster than real time it ran.
+ */
+
+public class Simulator
+{
+	private static final long	PHYSICS_STEP_US = 1000, NAVX_STEPS = 5;
+	private static final double	AUTONOMOUS_TIME = 15, TELEOP_TIME = 135, CONTROL_PERIOD = .020;
+
+	// Teleop driver script: start time, left stick Y, right stick Y, alternate drive mode.
+	// For this robot - is forward. Repeats for the whole teleop period.
+	private static final double[][]	TELEOP_SCRIPT = {
+			{0,    0,   0,  0},
+			{1,  -.8, -.8,  1},		// Forward, straight drive assist.
+			{5,  -.6,  .6,  0},		// Spin.
+			{7,  -.9, -.6,  0},		// Arc.
+			{10,  .8,  .8,  1},		// Backward, straight drive assist.
+			{14,   0,   0,  0},
+			{15,   0,   0,  0}};
+
+	private final Properties		properties;
+	private final VirtualClock		clock = new VirtualClock(1000000, PHYSICS_STEP_US);
+	private final NavXSampler		navxSampler = NavXSampler.getInstance();
+	private final HeadingController	headingController;
+	private final Odometry			odometry;
+	private final Odometry.Snapshot	pose = new Odometry.Snapshot();
+
+	private DrivetrainSim			drivetrain;
+	private PneumaticsSim			pneumatics;
+	private double					maxCurrent, minVoltage;
+	private int						steps;
+
+	// Teleop script step the driver is on.
+	private int						scriptStep;
+
+	public static void main(String[] args) throws IOException
+	{
+		Properties	properties = new Properties();
+		String		fileName = args.length > 0 ? args[0] : "Competition Robot Properties/Robot.properties";
+		Simulator	simulator;
+		long		startNs = System.nanoTime(), startUs;
+		double		wallSeconds, simulatedSeconds;
+
+		FileInputStream	input = new FileInputStream(fileName);
+
+		try
+		{
+			properties.load(input);
+		}
+		finally
+		{
+			input.close();
+		}
+
+		Util.consoleLog("properties=%s", fileName);
+
+		Telemetry.setSink(Telemetry.DISCARD);
+
+		simulator = new Simulator(properties);
+
+		startUs = simulator.clock.getTimeUs();
+
+		for (int program = 0; program < AutoPlan.PROGRAM_COUNT; program++)
+			simulator.runAutonomous(program, "LRL");
+
+		simulator.runAutonomous(2, "RLR");
+
+		simulator.runTeleop();
+
+		wallSeconds = (System.nanoTime() - startNs) / 1000000000.0;
+		simulatedSeconds = (simulator.clock.getTimeUs() - startUs) / 1000000.0;
+
+		Util.consoleLog("simulated %.1fs in %.2fs, %.0fx real time", simulatedSeconds, wallSeconds,
+				simulatedSeconds / wallSeconds);
+	}
+
+	public Simulator(Properties properties)
+	{
+		this.properties = properties;
+
+		Hardware.clock = clock;
+
+		clock.setStepListener(new Runnable()
+		{
+			public void run() { step(); }
+		});
+
+		headingController = HeadingController.getInstance(properties);
+		odometry = Odometry.getInstance(properties);
+
+		// Heading controller and odometry run on each NavX update like their robot threads.
+
+		navxSampler.addUpdateListener(new Runnable()
+		{
+			public void run()
+			{
+				headingController.update();
+				odometry.step();
+			}
+		});
+	}
+
+	// Start a run with a new robot at rest at pose 0.
+
+	private void reset()
+	{
+		drivetrain = new DrivetrainSim(properties);
+		pneumatics = new PneumaticsSim(drivetrain, properties);
+
+		Hardware.drive = drivetrain;
+		Hardware.navx = new NavXSim(drivetrain, RobotProperties.getDouble(properties, "SimGyroNoise", 0));
+		Hardware.pressure = pneumatics;
+
+		headingController.disable();
+		navxSampler.resetYaw();
+		odometry.reset(0, 0, 0);
+
+		maxCurrent = 0;
+		minVoltage = drivetrain.getBusVoltage();
+	}
+
+	// Clock step: advance the physics, and the NavX every 5ms.
+
+	private void step()
+	{
+		if (drivetrain == null) return;
+
+		if (steps++ % NAVX_STEPS == 0) navxSampler.update(clock.getTimeUs() / 1000);
+
+		drivetrain.step(PHYSICS_STEP_US / 1000000.0);
+		pneumatics.step(PHYSICS_STEP_US / 1000000.0);
+
+		maxCurrent = Math.max(maxCurrent, drivetrain.getTotalCurrent());
+		minVoltage = Math.min(minVoltage, drivetrain.getBusVoltage());
+	}
+
+	// Condition for a control loop to run until a virtual time.
+
+	private ControlLoop.Condition until(final long endUs)
+	{
+		return new ControlLoop.Condition()
+		{
+			public boolean isActive() { return clock.getTimeUs() < endUs; }
+		};
+	}
+
+	/**
+	 * Run an autonomous program for the length of the autonomous period.
+	 * @param program Auto program number.
+	 * @param gameMessage FMS game message.
+	 */
+
+	public void runAutonomous(int program, String gameMessage)
+	{
+		CommandScheduler	scheduler = new CommandScheduler(new ControlLoop("Autonomous", CONTROL_PERIOD));
+		AutoPlan			plan = AutoPlan.build(program, DriverStation.Alliance.Red, 2, gameMessage, properties);
+		long				endUs;
+
+		Util.consoleLog("program=%d msg=%s", program, gameMessage);
+
+		reset();
+
+		endUs = clock.getTimeUs() + (long) (AUTONOMOUS_TIME * 1000000);
+
+		scheduler.schedule(plan.command);
+		scheduler.run(until(endUs));
+		scheduler.report();
+
+		// Sit out the rest of the period so the robot settles.
+
+		clock.advance(endUs - clock.getTimeUs());
+
+		logResult("program " + program);
+	}
+
+	/**
+	 * Run the teleop driver script through the teleop driving loop on a
+	 * ControlLoop for the length of the teleop period.
+	 */
+
+	public void runTeleop()
+	{
+		final InputService	inputService = new InputService();
+		final ControlLoop	controlLoop = new ControlLoop("Teleop", CONTROL_PERIOD);
+		final LatencyTracer	tracer = new LatencyTracer(false);
+		final TeleopDrive	teleopDrive = new TeleopDrive(null, headingController, tracer);
+		final DriveLoop		driveLoop;
+		final double		scriptTime = TELEOP_SCRIPT[TELEOP_SCRIPT.length - 1][0];
+		final long			startUs;
+
+		Util.consoleLog();
+
+		reset();
+
+		scriptStep = 0;
+		startUs = clock.getTimeUs();
+
+		// The driver's sticks are the script step's, the utility stick is not used.
+
+		driveLoop = new DriveLoop(new DriveLoop.Input()
+		{
+			public void poll() { inputService.poll(); }
+
+			public double getLeftY() { return TELEOP_SCRIPT[scriptStep][1]; }
+
+			public double getRightY() { return TELEOP_SCRIPT[scriptStep][2]; }
+
+			public double getLeftX() { return 0; }
+
+			public double getRightX() { return 0; }
+
+			public double getUtilityX() { return 0; }
+		}, controlLoop.getLoadShedder(), teleopDrive, tracer, tracer.addPath("Stick", true), properties, CONTROL_PERIOD);
+
+		controlLoop.run(until(startUs + (long) (TELEOP_TIME * 1000000)), new ControlLoop.Body()
+		{
+			public void tick()
+			{
+				double	seconds = (clock.getTimeUs() - startUs) / 1000000.0 % scriptTime;
+
+				if (seconds < TELEOP_SCRIPT[scriptStep][0]) scriptStep = 0;
+
+				// Log each step's result the first time through the script.
+
+				while (scriptStep + 1 < TELEOP_SCRIPT.length && seconds >= TELEOP_SCRIPT[scriptStep + 1][0])
+				{
+					if (clock.getTimeUs() - startUs < scriptTime * 1000000)
+						logResult("teleop " + TELEOP_SCRIPT[scriptStep][0] + "s");
+
+					scriptStep++;
+				}
+
+				driveLoop.setAltDriveMode(TELEOP_SCRIPT[scriptStep][3] != 0);
+				driveLoop.tick();
+			}
+		});
+
+		teleopDrive.stop();
+
+		logResult("teleop");
+	}
+
+	private void logResult(String name)
+	{
+		odometry.step();
+		odometry.read(pose);
+
+		Util.consoleLog("%s: x=%.1f y=%.1f heading=%.1f odometry x=%.1f y=%.1f heading=%.1f max current=%.0fA " +
+				"min voltage=%.2fV pressure=%.0f", name, drivetrain.getX(), drivetrain.getY(), drivetrain.getHeading(),
+				pose.x, pose.y, pose.heading, maxCurrent, minVoltage, pneumatics.getPressure());
+	}
+}
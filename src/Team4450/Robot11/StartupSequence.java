@@ -0,0 +1,318 @@
+package Team4450.Robot11;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import Team4450.Lib.Util;
+
+/**
+ * Runs robot initialization as a set of named steps with dependencies. A step
+ * starts as soon as all the steps it depends on are done, so independent steps
+ * (CAN devices, NavX, monitors) run in parallel instead of one after another.
+ * Steps mostly wait on devices, so each running step gets its own pool thread
+ * and a hung step can't hold up the others. Each step has a timeout: a step that
+ * takes longer is marked timed out and left to finish in the background, and
+ * like a step that throws, the steps depending on it are skipped, so one missing
+ * device can't hang startup.
+ *
+ * run() returns when every step has finished, failed, timed out or been skipped,
+ * except background steps (such as waiting for NavX calibration) which are only
+ * started and log when they finish. It then logs a timeline of when each step
+ * started and how long it took. Background steps should only depend on
+ * foreground steps.
+ */
+
+public class StartupSequence
+{
+	private static final int	TIMELINE_WIDTH = 40;
+
+	// Step states.
+	private static final int	WAITING = 0, RUNNING = 1, DONE = 2, FAILED = 3, TIMED_OUT = 4, SKIPPED = 5;
+	private static final String[]	STATE_NAMES = {"waiting", "running", "done", "FAILED", "TIMED OUT", "skipped"};
+
+	// Code of a step. May throw, which fails the step.
+
+	public interface Body
+	{
+		void run() throws Exception;
+	}
+
+	// One initialization step. Created by add().
+
+	public static class Step
+	{
+		private final String	name;
+		private final Body		body;
+		private final Step[]	dependsOn;
+		private final long		timeoutUs;
+		private final boolean	background;
+
+		private volatile int	state = WAITING;
+		private volatile long	startUs, endUs;
+		private volatile boolean	failed;
+
+		private Step(String name, Body body, double timeout, boolean background, Step[] dependsOn)
+		{
+			this.name = name;
+			this.body = body;
+			this.timeoutUs = (long) (timeout * 1000000);
+			this.background = background;
+			this.dependsOn = dependsOn;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public boolean isDone()
+		{
+			return state == DONE;
+		}
+	}
+
+	private final ArrayList<Step>	steps = new ArrayList<Step>();
+	private final LinkedBlockingQueue<Step>	finished = new LinkedBlockingQueue<Step>();
+	private volatile boolean		returned;
+	private long					startUs, readyUs;
+
+	/**
+	 * Add a step.
+	 * @param name Name for the timeline.
+	 * @param timeout Seconds the step may take.
+	 * @param body Code to run.
+	 * @param dependsOn Steps that must be done before this one starts.
+	 * @return The step, to give to later steps as a dependency.
+	 */
+
+	public Step add(String name, double timeout, Body body, Step... dependsOn)
+	{
+		Step	step = new Step(name, body, timeout, false, dependsOn);
+
+		steps.add(step);
+
+		return step;
+	}
+
+	/**
+	 * Add a step run() does not wait for.
+	 */
+
+	public Step addBackground(String name, double timeout, Body body, Step... dependsOn)
+	{
+		Step	step = new Step(name, body, timeout, true, dependsOn);
+
+		steps.add(step);
+
+		return step;
+	}
+
+	/**
+	 * Run all steps, then log the timeline. Call once.
+	 * @return True if all foreground steps are done, false if any failed, timed out
+	 * or were skipped.
+	 */
+
+	public boolean run()
+	{
+		ExecutorService	executor = Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			int		count;
+
+			public Thread newThread(Runnable runnable)
+			{
+				Thread	thread = new Thread(runnable, "Startup-" + ++count);
+
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		Step	step;
+		long	nowUs, deadlineUs;
+		boolean	ok = true;
+
+		startUs = Hardware.getTime();
+
+		Util.consoleLog("steps=%d", steps.size());
+
+		try
+		{
+			while (true)
+			{
+				startReady(executor);
+
+				if (!isActive()) break;
+
+				// Wait for a step to finish or the next timeout.
+
+				deadlineUs = Long.MAX_VALUE;
+
+				for (Step s : steps)
+					if (s.state == RUNNING && !s.background) deadlineUs = Math.min(deadlineUs, s.startUs + s.timeoutUs);
+
+				nowUs = Hardware.getTime();
+
+				step = finished.poll(Math.max(1, (deadlineUs - nowUs) / 1000), TimeUnit.MILLISECONDS);
+
+				if (step != null && step.state == RUNNING) step.state = step.failed ? FAILED : DONE;
+
+				nowUs = Hardware.getTime();
+
+				for (Step s : steps)
+					if (s.state == RUNNING && !s.background && nowUs - s.startUs > s.timeoutUs)
+					{
+						s.state = TIMED_OUT;
+
+						Util.consoleLog("%s timed out after %.1fs", s.name, s.timeoutUs / 1000000.0);
+					}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		readyUs = Hardware.getTime();
+		returned = true;
+
+		executor.shutdown();	// Lets running steps finish, starts no more.
+
+		for (Step s : steps)
+			if (!s.background && s.state != DONE) ok = false;
+
+		logTimeline();
+
+		return ok;
+	}
+
+	// Start all waiting steps whose dependencies are done, skip those with a
+	// dependency that did not finish.
+
+	private void startReady(ExecutorService executor)
+	{
+		boolean	ready, blocked, changed = true;
+
+		while (changed)
+		{
+			changed = false;
+
+			for (final Step step : steps)
+			{
+				if (step.state != WAITING) continue;
+
+				ready = true;
+				blocked = false;
+
+				for (Step dependency : step.dependsOn)
+				{
+					if (dependency.state != DONE) ready = false;
+
+					if (dependency.state >= FAILED) blocked = true;
+				}
+
+				if (blocked)
+				{
+					step.state = SKIPPED;
+					changed = true;
+
+					Util.consoleLog("%s skipped", step.name);
+				}
+				else if (ready)
+				{
+					step.state = RUNNING;
+					step.startUs = Hardware.getTime();
+
+					executor.execute(new Runnable()
+					{
+						public void run() { runStep(step); }
+					});
+				}
+			}
+		}
+	}
+
+	// True while a foreground step is waiting or running, or a background step is
+	// waiting to start.
+
+	private boolean isActive()
+	{
+		for (Step step : steps)
+			if (step.state == WAITING || (step.state == RUNNING && !step.background)) return true;
+
+		return false;
+	}
+
+	// Run a step on a pool thread. Steps that finish after run() stopped waiting
+	// for them log their own time.
+
+	private void runStep(Step step)
+	{
+		try
+		{
+			step.body.run();
+		}
+		catch (Throwable e)
+		{
+			step.failed = true;
+
+			Util.logException(e);
+		}
+
+		step.endUs = Hardware.getTime();
+
+		if (returned || step.background || step.state == TIMED_OUT)
+			Util.consoleLog("%s %s in %.1fms, %.1fms after start", step.name, step.failed ? "failed" : "done",
+					(step.endUs - step.startUs) / 1000.0, (step.endUs - startUs) / 1000.0);
+
+		finished.add(step);
+	}
+
+	/**
+	 * Return time from run() being called to all foreground steps finished in
+	 * milliseconds, 0 if run() has not returned.
+	 */
+
+	public double getReadyTime()
+	{
+		return readyUs == 0 ? 0 : (readyUs - startUs) / 1000.0;
+	}
+
+	// Log each step's start and run time and a bar showing when it ran.
+
+	private void logTimeline()
+	{
+		StringBuilder	bar = new StringBuilder(TIMELINE_WIDTH);
+		double			scale = (double) TIMELINE_WIDTH / Math.max(1, readyUs - startUs);
+		long			endUs;
+		int				from, to;
+
+		Util.consoleLog("ready in %.1fms", getReadyTime());
+
+		for (Step step : steps)
+		{
+			bar.setLength(0);
+
+			if (step.state == WAITING || step.state == SKIPPED)
+			{
+				Util.consoleLog("  %-22s %9s %9s %-9s", step.name, "", "", STATE_NAMES[step.state]);
+				continue;
+			}
+
+			endUs = step.state == DONE || step.state == FAILED ? step.endUs : readyUs;
+
+			from = (int) ((step.startUs - startUs) * scale);
+			to = Math.max(from + 1, (int) Math.min(TIMELINE_WIDTH, (endUs - startUs) * scale));
+
+			for (int i = 0; i < TIMELINE_WIDTH; i++) bar.append(i >= from && i < to ? '#' : '.');
+
+			Util.consoleLog("  %-22s %7.1fms %7.1fms %-9s %s", step.name, (step.startUs - startUs) / 1000.0,
+					(endUs - step.startUs) / 1000.0, STATE_NAMES[step.state], bar);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package Team4450.Robot11;
+
+import edu.wpi.first.wpilibj.drive.DifferentialDrive;
+
+// Robot DriveTrain: Devices.robotDrive and the Talon drive encoders.
+
+public class TalonDriveTrain implements DriveTrain
+{
+	private final DifferentialDrive	robotDrive;
+
+	public TalonDriveTrain(DifferentialDrive robotDrive)
+	{
+		this.robotDrive = robotDrive;
+	}
+
+	public void tankDrive(double leftPower, double rightPower, boolean squaredInputs)
+	{
+		robotDrive.tankDrive(leftPower, rightPower, squaredInputs);
+	}
+
+	public void curvatureDrive(double speed, double rotation, boolean quickTurn)
+	{
+		robotDrive.curvatureDrive(speed, rotation, quickTurn);
+	}
+
+	public double getLeftDistance()
+	{
+		return Devices.GetLeftDistance();
+	}
+
+	public double getRightDistance()
+	{
+		return Devices.GetRightDistance();
+	}
+
+	public double getLeftPower()
+	{
+		return Devices.GetLeftPower();
+	}
+
+	public double getRightPower()
+	{
+		return Devices.GetRightPower();
+	}
+}
@@ -0,0 +1,205 @@
+package Team4450.Robot11;
+
+import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
+
+import Team4450.Lib.Util;
+
+/**
+ * Low priority background task that polls output voltage, current and temperature
+ * of the drive CAN Talons at a configurable rate into primitive arrays. Each pass
+ * reads the Talons into a private working set, then copies it into the published
+ * set under the sampler's lock. Callers copy the published set into their own
+ * Snapshot under the same lock, without any CAN traffic. The lock is only held
+ * for the array copies. String formatting only happens when report() is called.
+ * CAN bus utilization is sampled on the same pass and its mean and max are kept
+ * so drive topologies can be compared.
+ */
+
+public class TalonStatusSampler extends Thread
+{
+	public static final String[]	TALON_NAMES = {"LF", "LR", "RF", "RR", "LS", "RS"};
+	public static final int			TALON_COUNT = TALON_NAMES.length;
+
+	// Per reader copy of the Talon status. Filled by read().
+
+	public static class Snapshot
+	{
+		public final double[]	voltage = new double[TALON_COUNT], current = new double[TALON_COUNT];
+		public final double[]	temperature = new double[TALON_COUNT];
+		public double			canUtilization;
+		public long				timeUs;
+		public int				sequence;
+
+		public double getTotalCurrent()
+		{
+			double total = 0;
+
+			for (int i = 0; i < TALON_COUNT; i++) total += current[i];
+
+			return total;
+		}
+	}
+
+	// This variable and method make sure this class is a singleton.
+
+	private static TalonStatusSampler	sampler = null;
+
+	public static TalonStatusSampler getInstance()
+	{
+		if (sampler == null) sampler = new TalonStatusSampler();
+
+		return sampler;
+	}
+
+	// This is the rest of the class.
+
+	private final Snapshot		working = new Snapshot(), published = new Snapshot();
+	private final Snapshot		reportCopy = new Snapshot();
+	private int					sequence;			// Publishes so far.
+	private volatile long		intervalMs = 250;
+	
+	// CAN utilization statistics, only touched by the sampler thread except for reset.
+	private double				canUtilizationSum, canUtilizationMax;
+	private int					canUtilizationCount;
+	private volatile boolean	resetCANStatistics;
+
+	private TalonStatusSampler()
+	{
+		Util.consoleLog();
+
+		setName("TalonStatusSampler");
+		setPriority(Thread.MIN_PRIORITY);
+		setDaemon(true);
+	}
+
+	/**
+	 * Set the time between samples.
+	 * @param interval Seconds between samples.
+	 */
+
+	public void setInterval(double interval)
+	{
+		intervalMs = (long) (interval * 1000);
+
+		Util.consoleLog("%.3f", interval);
+	}
+
+	public void run()
+	{
+		WPI_TalonSRX[]	talons;
+
+		Util.consoleLog();
+
+		try
+		{
+			while (!isInterrupted())
+			{
+				talons = Devices.getDriveTalons();
+
+				if (talons != null)
+				{
+					// CAN reads go to the working set, which readers never see.
+
+					for (int i = 0; i < TALON_COUNT; i++)
+					{
+						working.voltage[i] = talons[i].getMotorOutputVoltage();
+						working.current[i] = talons[i].getOutputCurrent();
+						working.temperature[i] = talons[i].getTemperature();
+					}
+
+					working.timeUs = Hardware.getTime();
+					working.canUtilization = Devices.GetCANBusUtilization();
+
+					if (resetCANStatistics)
+					{
+						canUtilizationSum = canUtilizationMax = 0;
+						canUtilizationCount = 0;
+						resetCANStatistics = false;
+					}
+
+					canUtilizationSum += working.canUtilization;
+					canUtilizationCount++;
+
+					if (working.canUtilization > canUtilizationMax) canUtilizationMax = working.canUtilization;
+
+					publish();
+				}
+
+				Hardware.sleep(intervalMs * 1000);
+			}
+		}
+		catch (Throwable e) {Util.logException(e);}
+
+		Util.consoleLog("end");
+	}
+
+	private synchronized void publish()
+	{
+		System.arraycopy(working.voltage, 0, published.voltage, 0, TALON_COUNT);
+		System.arraycopy(working.current, 0, published.current, 0, TALON_COUNT);
+		System.arraycopy(working.temperature, 0, published.temperature, 0, TALON_COUNT);
+		published.canUtilization = working.canUtilization;
+		published.timeUs = working.timeUs;
+
+		sequence++;
+	}
+
+	/**
+	 * Copy the latest Talon status into the caller's snapshot. No CAN traffic,
+	 * no allocation. Plain arrays can not be published safely with a sequence
+	 * count alone, so the copy is made under the lock publish() holds.
+	 * @param snapshot Snapshot to fill.
+	 */
+
+	public synchronized void read(Snapshot snapshot)
+	{
+		System.arraycopy(published.voltage, 0, snapshot.voltage, 0, TALON_COUNT);
+		System.arraycopy(published.current, 0, snapshot.current, 0, TALON_COUNT);
+		System.arraycopy(published.temperature, 0, snapshot.temperature, 0, TALON_COUNT);
+		snapshot.canUtilization = published.canUtilization;
+		snapshot.timeUs = published.timeUs;
+		snapshot.sequence = sequence;
+	}
+
+	/**
+	 * Format the latest status as voltage/current per Talon. Allocates, do not
+	 * call every tick.
+	 */
+
+	public synchronized String report()
+	{
+		read(reportCopy);
+
+		return format(reportCopy);
+	}
+
+	// Start a new CAN utilization measurement, as at the start of a mode.
+
+	public void resetCANStatistics()
+	{
+		resetCANStatistics = true;
+	}
+
+	// Log mean and max CAN utilization since the last reset, tagged with the drive topology.
+
+	public void logCANStatistics()
+	{
+		Util.consoleLog("topology=%s CAN utilization mean=%.1f%% max=%.1f%% samples=%d", Devices.driveTopology,
+				canUtilizationCount == 0 ? 0 : canUtilizationSum / canUtilizationCount, canUtilizationMax,
+				canUtilizationCount);
+	}
+
+	// Format a snapshot as volts/amps for each Talon in the same layout as the old
+	// Devices.GetCANTalonStatus().
+
+	public static String format(Snapshot snapshot)
+	{
+		return String.format("%.1f/%.1f  %.1f/%.1f  %.1f/%.1f  %.1f/%.1f  %.1f/%.1f  %.1f/%.1f",
+				snapshot.voltage[0], snapshot.current[0],
+				snapshot.voltage[1], snapshot.current[1],
+				snapshot.voltage[2], snapshot.current[2],
+				snapshot.voltage[3], snapshot.current[3],
+				snapshot.voltage[4], snapshot.current[4],
+				snapshot.voltage[5], snapshot.current[5]);
+	}
+}
@@ -0,0 +1,285 @@
+package Team4450.Robot11;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Change only, batched SmartDashboard publisher. Keys are registered once into a
+ * preallocated, typed table and referred to by index after that. Setting a value
+ * only marks the key dirty when it changed by more than the key's tolerance, and
+ * dirty keys are pushed to NetworkTables together when flush() is called and the
+ * flush interval has passed. Setting values does not allocate. Values are put to
+ * NetworkTables outside the table lock, so flushing from the low priority monitor
+ * thread does not hold up the control loop.
+ *
+ * Flushed values go to a Sink, the SmartDashboard unless another is installed.
+ * The simulator and replay install DISCARD so they run without NetworkTables.
+ */
+
+public class Telemetry
+{
+	private static final int		MAX_KEYS = 128;
+	private static final byte		NUMBER = 0, BOOLEAN = 1, STRING = 2;
+
+	private static final String[]	keys = new String[MAX_KEYS];
+	private static final byte[]		types = new byte[MAX_KEYS];
+	private static final double[]	values = new double[MAX_KEYS], published = new double[MAX_KEYS];
+	private static final double[]	tolerances = new double[MAX_KEYS];
+	private static final String[]	strings = new String[MAX_KEYS], publishedStrings = new String[MAX_KEYS];
+	private static final boolean[]	dirty = new boolean[MAX_KEYS], everPublished = new boolean[MAX_KEYS];
+
+	private static int				count;
+	private static long				flushIntervalUs = 100000, lastFlushUs;
+
+	// Dirty keys copied out of the table for putting, used only by the publishing thread.
+	private static final int[]		pendingKeys = new int[MAX_KEYS];
+	private static final double[]	pendingValues = new double[MAX_KEYS];
+	private static final String[]	pendingStrings = new String[MAX_KEYS];
+	private static final AtomicBoolean	publishing = new AtomicBoolean();
+
+	// Where flushed values are put.
+
+	public interface Sink
+	{
+		void putNumber(String key, double value);
+
+		void putBoolean(String key, boolean value);
+
+		void putString(String key, String value);
+	}
+
+	// Puts to the SmartDashboard. Needs the NetworkTables native code.
+
+	public static final Sink		DASHBOARD = new Sink()
+	{
+		public void putNumber(String key, double value) { SmartDashboard.putNumber(key, value); }
+
+		public void putBoolean(String key, boolean value) { SmartDashboard.putBoolean(key, value); }
+
+		public void putString(String key, String value) { SmartDashboard.putString(key, value); }
+	};
+
+	// Drops all values, for running off the robot.
+
+	public static final Sink		DISCARD = new Sink()
+	{
+		public void putNumber(String key, double value) {}
+
+		public void putBoolean(String key, boolean value) {}
+
+		public void putString(String key, String value) {}
+	};
+
+	private static volatile Sink	sink = DASHBOARD;
+
+	// Standard robot keys.
+
+	public static final int		PROGRAM = addString("Program");
+	public static final int		COMPRESSOR_ENABLED = addBoolean("CompressorEnabled");
+	public static final int		DISABLED = addBoolean("Disabled");
+	public static final int		AUTO_MODE = addBoolean("Auto Mode");
+	public static final int		TELEOP_MODE = addBoolean("Teleop Mode");
+	public static final int		FMS = addBoolean("FMS");
+	public static final int		AUTO_TARGET = addBoolean("AutoTarget");
+	public static final int		TARGET_LOCKED = addBoolean("TargetLocked");
+	public static final int		OVERLOAD = addBoolean("Overload");
+	public static final int		AIR_PRESSURE = addNumber("AirPressure", 1);
+	public static final int		GYRO = addNumber("Gyro", .5);
+	public static final int		DRIVE_CURRENT = addNumber("DriveCurrent", 1);
+	public static final int		CAN_UTILIZATION = addNumber("CANUtilization", 1);
+	public static final int		BATTERY_VOLTAGE = addNumber("BatteryVoltage", .1);
+	public static final int		LOW_BATTERY = addBoolean("LowBattery");
+	public static final int		LOW_PRESSURE = addBoolean("LowPressure");
+	public static final int		COMPRESSOR_RUNNING = addBoolean("CompressorRunning");
+	public static final int		PDP_CURRENT = addNumber("PDPCurrent", 1);
+	public static final int		PDP_OVERLOAD = addBoolean("PDPOverload");
+
+	/**
+	 * Register a number key. Registering an existing key returns its index.
+	 * @param key SmartDashboard key.
+	 * @param tolerance Change needed before the new value is published.
+	 * @return Index used to set the value.
+	 */
+
+	public static synchronized int addNumber(String key, double tolerance)
+	{
+		return add(key, NUMBER, tolerance);
+	}
+
+	public static synchronized int addBoolean(String key)
+	{
+		return add(key, BOOLEAN, 0);
+	}
+
+	public static synchronized int addString(String key)
+	{
+		return add(key, STRING, 0);
+	}
+
+	private static int add(String key, byte type, double tolerance)
+	{
+		for (int i = 0; i < count; i++)
+			if (keys[i].equals(key))
+			{
+				if (types[i] != type) throw new IllegalArgumentException("Telemetry key type mismatch: " + key);
+
+				return i;
+			}
+
+		if (count == MAX_KEYS) throw new IllegalStateException("Telemetry key table full: " + key);
+
+		keys[count] = key;
+		types[count] = type;
+		tolerances[count] = tolerance;
+
+		return count++;
+	}
+
+	/**
+	 * Install where flushed values go. Set before the first flush.
+	 * @param newSink DASHBOARD, DISCARD or another sink.
+	 */
+
+	public static synchronized void setSink(Sink newSink)
+	{
+		sink = newSink;
+	}
+
+	/**
+	 * Set how often dirty keys are pushed to the dashboard.
+	 * @param interval Seconds between flushes.
+	 */
+
+	public static synchronized void setFlushInterval(double interval)
+	{
+		flushIntervalUs = (long) (interval * 1000000);
+	}
+
+	public static synchronized void setNumber(int key, double value)
+	{
+		values[key] = value;
+
+		if (!everPublished[key] || Math.abs(value - published[key]) > tolerances[key] ||
+			(Double.isNaN(value) != Double.isNaN(published[key])))
+			dirty[key] = true;
+		else
+			dirty[key] = false;
+	}
+
+	public static synchronized void setBoolean(int key, boolean value)
+	{
+		values[key] = value ? 1 : 0;
+
+		dirty[key] = !everPublished[key] || values[key] != published[key];
+	}
+
+	public static synchronized void setString(int key, String value)
+	{
+		strings[key] = value;
+
+		dirty[key] = !everPublished[key] || (value == null ? publishedStrings[key] != null : !value.equals(publishedStrings[key]));
+	}
+
+	/**
+	 * Push dirty keys to the dashboard if the flush interval has passed. Call
+	 * once per control loop tick.
+	 */
+
+	public static void flush()
+	{
+		publish(true);
+	}
+
+	/**
+	 * Push dirty keys to the dashboard now. Used at mode changes when no control
+	 * loop is running. If another thread is putting, the keys go out on its next flush.
+	 */
+
+	public static void flushNow()
+	{
+		publish(false);
+	}
+
+	// Copy the dirty keys under the table lock, then put them to the sink outside
+	// it, so a low priority flushing thread never holds the lock the control loop
+	// sets values under while it waits on NetworkTables. Only one thread puts at a
+	// time, another flushing meanwhile returns and its keys go out on the next flush.
+
+	private static void publish(boolean waitInterval)
+	{
+		int		pending;
+
+		if (!publishing.compareAndSet(false, true)) return;
+
+		try
+		{
+			pending = collect(waitInterval);
+
+			for (int i = 0; i < pending; i++)
+			{
+				int key = pendingKeys[i];
+
+				switch (types[key])
+				{
+					case NUMBER:
+						sink.putNumber(keys[key], pendingValues[i]);
+						break;
+
+					case BOOLEAN:
+						sink.putBoolean(keys[key], pendingValues[i] != 0);
+						break;
+
+					case STRING:
+						sink.putString(keys[key], pendingStrings[i] == null ? "" : pendingStrings[i]);
+						pendingStrings[i] = null;
+						break;
+				}
+			}
+		}
+		finally
+		{
+			publishing.set(false);
+		}
+	}
+
+	// Copy dirty keys to the pending arrays and mark them published. Returns the
+	// number copied, 0 if waiting for the flush interval and it has not passed.
+
+	private static synchronized int collect(boolean waitInterval)
+	{
+		int		pending = 0;
+		long	nowUs;
+
+		if (waitInterval)
+		{
+			nowUs = Hardware.getTime();
+
+			if (nowUs - lastFlushUs < flushIntervalUs) return 0;
+
+			lastFlushUs = nowUs;
+		}
+
+		for (int i = 0; i < count; i++)
+		{
+			if (!dirty[i]) continue;
+
+			pendingKeys[pending] = i;
+			pendingValues[pending] = values[i];
+
+			if (types[i] == STRING)
+			{
+				pendingStrings[pending] = strings[i];
+				publishedStrings[i] = strings[i];
+			}
+
+			pending++;
+
+			published[i] = values[i];
+			everPublished[i] = true;
+			dirty[i] = false;
+		}
+
+		return pending;
+	}
+}
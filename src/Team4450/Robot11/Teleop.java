@@ -6,16 +6,28 @@ import java.lang.Math;
 import Team4450.Lib.*;
 import Team4450.Lib.JoyStick.*;
 import Team4450.Lib.LaunchPad.*;
-import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 class Teleop
 {
 	private final Robot 		robot;
 	public  JoyStick			rightStick, leftStick, utilityStick;
 	public  LaunchPad			launchPad;
-	private boolean				autoTarget, invertDrive, altDriveMode;
+	private boolean				invertDrive;
 	private Vision				vision;
+	private static final double	CONTROL_LOOP_PERIOD = .020;
+
+	private final ControlLoop	controlLoop = new ControlLoop("Teleop", CONTROL_LOOP_PERIOD);
+	private final LoadShedder	shedder = controlLoop.getLoadShedder();
+	private final InputService	inputService = new InputService();
+
+	// Input to drive latency tracing, switched on the dashboard.
+	private final LatencyTracer	tracer;
+	private final int			stickPath, triggerPath;
+
+	// Driving loop, shared with the teleop loop benchmark.
+	private final TeleopDrive	teleopDrive;
+	private final DriveLoop		driveLoop;
+	private final NavXSampler	navxSampler = NavXSampler.getInstance();
 
 	// Constructor.
 
@@ -26,6 +38,33 @@ class Teleop
 		this.robot = robot;
 
 		vision = Vision.getInstance(robot);
+
+		tracer = new LatencyTracer(RobotProperties.getBoolean(robot.robotProperties, "LatencyTrace", false));
+		stickPath = tracer.addPath("Stick", true);
+		triggerPath = tracer.addPath("Trigger", false);
+
+		teleopDrive = new TeleopDrive(Devices.closedLoopDrive, HeadingController.getInstance(), tracer);
+
+		// Driver input from the sticks created in OperatorControl, buttons polled by the
+		// input service.
+
+		driveLoop = new DriveLoop(new DriveLoop.Input()
+		{
+			public void poll() { inputService.poll(); }
+
+			public double getLeftY() { return leftStick.GetY(); }
+
+			public double getRightY() { return rightStick.GetY(); }
+
+			public double getLeftX() { return leftStick.GetX(); }
+
+			public double getRightX() { return rightStick.GetX(); }
+
+			public double getUtilityX() { return utilityStick.GetX(); }
+		}, shedder, teleopDrive, tracer, stickPath, robot.robotProperties, CONTROL_LOOP_PERIOD);
+
+		shedder.setThresholds(RobotProperties.getDouble(robot.robotProperties, "LoadShedBestEffort", .6),
+				RobotProperties.getDouble(robot.robotProperties, "LoadShedNormal", .9));
 	}
 
 	// Free all objects that need it.
@@ -34,19 +73,16 @@ class Teleop
 	{
 		Util.consoleLog();
 
-		if (leftStick != null) leftStick.dispose();
-		if (rightStick != null) rightStick.dispose();
-		if (utilityStick != null) utilityStick.dispose();
-		if (launchPad != null) launchPad.dispose();
+		teleopDrive.stop();
 	}
 
-	void OperatorControl()
+	ControlLoop getControlLoop()
 	{
-		double	rightY = 0, leftY = 0, utilX = 0, rightX = 0, leftX = 0;
-		double	gain = .01;
-		boolean	steeringAssistMode = false;
-		int		angle;
+		return controlLoop;
+	}
 
+	void OperatorControl()
+	{
 		// Motor safety turned off during initialization.
 		Devices.robotDrive.setSafetyEnabled(false);
 
@@ -55,7 +91,9 @@ class Teleop
 		LCD.printLine(1, "Mode: OperatorControl");
 		LCD.printLine(2, "All=%s, Start=%d, FMS=%b", robot.alliance.name(), robot.location, Devices.ds.isFMSAttached());
 
-		// Configure LaunchPad and Joystick event handlers.
+		// Configure LaunchPad and Joystick event handlers. Their buttons are polled by the
+		// input service in the control loop tick, so the RobotLib monitor threads are not
+		// started.
 
 		launchPad = new LaunchPad(Devices.launchPad, LaunchPadControlIDs.BUTTON_BLUE, this);
 
@@ -67,40 +105,38 @@ class Teleop
 
 		//Example on how to track button:
 		//launchPad.AddControl(LaunchPadControlIDs.BUTTON_COLOR_HERE);
-		launchPad.addLaunchPadEventListener(new LaunchPadListener());
-		launchPad.Start();
+		inputService.addLaunchPad(launchPad, Devices.launchPad, new LaunchPadListener());
 
 		leftStick = new JoyStick(Devices.leftStick, "LeftStick", JoyStickButtonIDs.TRIGGER, this);
 		//Example on how to track button:
 		//leftStick.AddButton(JoyStickButtonIDs.BUTTON_NAME_HERE);
-		leftStick.addJoyStickEventListener(new LeftStickListener());
-		leftStick.Start();
+		inputService.addJoyStick(leftStick, Devices.leftStick, new LeftStickListener());
 
 		rightStick = new JoyStick(Devices.rightStick, "RightStick", JoyStickButtonIDs.TRIGGER, this);
 		//Example on how to track button:
 		//rightStick.AddButton(JoyStickButtonIDs.BUTTON_NAME_HERE);
-		rightStick.addJoyStickEventListener(new RightStickListener());
-		rightStick.Start();
+		inputService.addJoyStick(rightStick, Devices.rightStick, new RightStickListener());
 
 		utilityStick = new JoyStick(Devices.utilityStick, "UtilityStick", JoyStickButtonIDs.TRIGGER, this);
 		//Example on how to track button:
 		//utilityStick.AddButton(JoyStickButtonIDs.BUTTON_NAME_HERE);
-		utilityStick.addJoyStickEventListener(new UtilityStickListener());
-		utilityStick.Start();
+		inputService.addJoyStick(utilityStick, Devices.utilityStick, new UtilityStickListener());
 
 		// Tighten up dead zone for smoother climber movement.
 		utilityStick.deadZone = .05;
 
-		// Set CAN Talon brake mode by rocker switch setting.
-		// We do this here so that the Utility stick thread has time to read the initial state
-		// of the rocker switch.
+		// Set CAN Talon brake mode by rocker switch setting. The input service latched the
+		// initial state of the rocker switch when it was added.
 		if (robot.isComp) Devices.SetCANTalonBrakeMode(lpControl.latchedState);
 
-		// Set gyro/Navx to heading 0.
+		// Set gyro/Navx to heading 0. Yaw is reset through the sampler so Odometry
+		// sees the reset and does not count the jump as a turn.
 		//robot.gyro.reset();
-		Devices.navx.resetYaw();
+		navxSampler.resetYaw();
 
-		Devices.navx.setHeading(90);
+		if (Hardware.navx != null) Hardware.navx.setHeading(90);
+
+		navxSampler.refresh();
 
 		// Reset encoder.
 		//Devices.encoder.reset();
@@ -108,124 +144,25 @@ class Teleop
 		// Motor safety turned on.
 		Devices.robotDrive.setSafetyEnabled(true);
 
-		// Driving loop runs until teleop is over.
+		// Driving loop runs at a fixed 50hz rate until teleop is over.
 
-		while (robot.isEnabled() && robot.isOperatorControl())
+		controlLoop.run(new ControlLoop.Condition()
 		{
-			// Get joystick deflection and feed to robot drive object
-			// using calls to our JoyStick class.
-
-			rightY = stickLogCorrection(rightStick.GetY());	// fwd/back
-			leftY = stickLogCorrection(leftStick.GetY());	// fwd/back
-
-			rightX = stickLogCorrection(rightStick.GetX());	// left/right
-			leftX = stickLogCorrection(leftStick.GetX());	// left/right
-
-			utilX = utilityStick.GetX();
-
-			LCD.printLine(4, "leftY=%.4f  rightY=%.4f  utilX=%.4f", leftY, rightY, utilX);
-			LCD.printLine(6, "yaw=%.2f, total=%.2f, rate=%.2f, hdng=%.2f", Devices.navx.getYaw(), Devices.navx.getTotalYaw(), 
-					Devices.navx.getYawRate(), Devices.navx.getHeading());
-			LCD.printLine(8, "pressureV=%.2f  psi=%d", robot.monitorCompressorThread.getVoltage(), robot.monitorCompressorThread.getPressure());
-
-			// Set wheel motors.
-			// Do not feed JS input to robotDrive if we are controlling the motors in automatic functions.
-
-			//if (!autoTarget) robot.robotDrive.tankDrive(leftY, rightY);
-
-			// Two drive modes, full tank and alternate. Switch on right stick trigger.
-
-			if (!autoTarget) 
-			{
-				if (altDriveMode)
-				{	// normal tank with straight drive assist when sticks within 10% of each other.
-					if (leftRightEqual(leftY, rightY, 10) && Math.abs(rightY) > .50)
-					{
-						if (!steeringAssistMode) Devices.navx.resetYaw();
-
-						// Angle is negative if robot veering left, positive if veering right when going forward.
-						// It is opposite when going backward. Note that for this robot, - power means forward and
-						// + power means backward.
-
-						angle = (int) Devices.navx.getYaw();
-
-						LCD.printLine(5, "angle=%d", angle);
-
-						// Invert angle for backwards.
-
-						if (rightY > 0) angle = -angle;
-
-						//Util.consoleLog("angle=%d", angle);
-
-						// Note we invert sign on the angle because we want the robot to turn in the opposite
-						// direction than it is currently going to correct it. So a + angle says robot is veering
-						// right so we set the turn value to - because - is a turn left which corrects our right
-						// drift.
-
-						Devices.robotDrive.curvatureDrive(rightY, -angle * gain, true);
-
-						steeringAssistMode = true;
-					}
-					else
-					{
-						steeringAssistMode = false;
-						Devices.robotDrive.tankDrive(leftY, rightY);		// Normal tank drive.
-					}
-
-					SmartDashboard.putBoolean("Overload", steeringAssistMode);
-				}
-				else
-					Devices.robotDrive.tankDrive(leftY, rightY);		// Normal tank drive.
-			}
-
-			// Update the robot heading indicator on the DS.
-
-			SmartDashboard.putNumber("Gyro", Devices.navx.getHeading());
-
-			// End of driving loop.
-
-			Timer.delay(.020);	// wait 20ms for update from driver station.
-		}
+			public boolean isActive() { return robot.isEnabled() && robot.isOperatorControl(); }
+		}, 
+		new ControlLoop.Body()
+		{
+			public void tick() { driveLoop.tick(); }
+		});
 
 		// End of teleop mode.
 
-		Util.consoleLog("end");
-	}
+		inputService.logStatistics();
+		tracer.dump();
 
-	private boolean leftRightEqual(double left, double right, double percent)
-	{
-		//if (left == right) return true;
-
-		if (Math.abs(left - right) <= (1 * (percent / 100))) return true;
-
-		return false;
-	}
-
-	// Custom base logarithm.
-	// Returns logarithm base of the value.
-
-	private double baseLog(double base, double value)
-	{
-		return Math.log(value) / Math.log(base);
-	}
-
-	// Map joystick y value of 0.0 to 1.0 to the motor working power range of approx 0.5 to 1.0 using
-	// logarithmic curve.
-
-	private double stickLogCorrection(double joystickValue)
-	{
-		double base = Math.pow(2, 1/3) + Math.pow(2, 1/3);
-
-		if (joystickValue > 0)
-			joystickValue = baseLog(base, joystickValue + 1);
-		else if (joystickValue < 0)
-			joystickValue = -baseLog(base, -joystickValue + 1);
-
-		return joystickValue;
+		Util.consoleLog("end");
 	}
 
-	
-
 	// Handle LaunchPad control events.
 
 	public class LaunchPadListener implements LaunchPadEventListener 
@@ -294,7 +231,8 @@ class Teleop
 			switch(button.id)
 			{
 			case TRIGGER:
-				altDriveMode = !altDriveMode;
+				driveLoop.setAltDriveMode(!driveLoop.isAltDriveMode());
+				tracer.stamp(triggerPath, inputService.getEventTime());
 				break;
 				
 			//Example of Joystick Button case:
@@ -0,0 +1,145 @@
+package Team4450.Robot11;
+
+/**
+ * Teleop driving decisions, separate from the driver station and LCD code in
+ * Teleop so the same logic runs on the robot and in the Simulator. Each tick
+ * takes the shaped stick values and drive mode and commands the drive: plain
+ * tank drive, or in the alternate mode, straight drive assist when the sticks
+ * are within 10% of each other.
+ */
+
+class TeleopDrive
+{
+	private final ClosedLoopDrive	closedLoopDrive;
+	private final HeadingController	headingController;
+	private final LatencyTracer		tracer;
+	private final NavXSampler		navxSampler = NavXSampler.getInstance();
+
+	private boolean					steeringAssistMode;
+	private double					turn;
+
+	/**
+	 * @param closedLoopDrive Talon closed loop drive, null to drive open loop.
+	 * @param headingController Heading controller for NavX steering assist, null if its startup
+	 * step was skipped, alternate mode then drives plain tank.
+	 * @param tracer Latency tracer marked at the decide and drive stages.
+	 */
+
+	TeleopDrive(ClosedLoopDrive closedLoopDrive, HeadingController headingController, LatencyTracer tracer)
+	{
+		this.closedLoopDrive = closedLoopDrive;
+		this.headingController = headingController;
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Drive one tick.
+	 * @param leftY Shaped left stick Y.
+	 * @param rightY Shaped right stick Y.
+	 * @param altDriveMode True for tank with straight drive assist.
+	 */
+
+	void drive(double leftY, double rightY, boolean altDriveMode)
+	{
+		if (altDriveMode)
+		{	// normal tank with straight drive assist when sticks within 10% of each other.
+			if (leftRightEqual(leftY, rightY, 10) && Math.abs(rightY) > .50 && closedLoopDrive != null)
+			{
+				// Heading hold and velocity control run on the Talons, we only send the setpoint.
+
+				if (!steeringAssistMode) closedLoopDrive.holdHeading();
+
+				tracer.markAll(LatencyTracer.DECIDE);
+
+				closedLoopDrive.driveStraight(rightY);
+
+				tracer.markAll(LatencyTracer.DRIVE);
+
+				steeringAssistMode = true;
+			}
+			else if (leftRightEqual(leftY, rightY, 10) && Math.abs(rightY) > .50 && headingController != null)
+			{
+				if (!steeringAssistMode)
+				{
+					navxSampler.resetYaw();
+					headingController.enable(0);
+				}
+
+				// Angle is negative if robot veering left, positive if veering right when going forward.
+				// It is opposite when going backward. Note that for this robot, - power means forward and
+				// + power means backward.
+
+				// The heading controller runs at the NavX update rate holding yaw 0. Its output already
+				// opposes the drift (+ yaw gives - turn), invert it for backwards.
+
+				turn = headingController.getOutput();
+
+				if (rightY > 0) turn = -turn;
+
+				tracer.markAll(LatencyTracer.DECIDE);
+
+				Hardware.drive.curvatureDrive(rightY, turn, true);
+
+				tracer.markAll(LatencyTracer.DRIVE);
+
+				steeringAssistMode = true;
+			}
+			else
+			{
+				if (steeringAssistMode && headingController != null) headingController.disable();
+
+				steeringAssistMode = false;
+				tankDrive(leftY, rightY);		// Normal tank drive.
+			}
+
+			Telemetry.setBoolean(Telemetry.OVERLOAD, steeringAssistMode);
+		}
+		else
+			tankDrive(leftY, rightY);		// Normal tank drive.
+	}
+
+	boolean isSteeringAssist()
+	{
+		return steeringAssistMode;
+	}
+
+	// True if driving through Talon closed loop drive.
+
+	boolean isClosedLoop()
+	{
+		return closedLoopDrive != null;
+	}
+
+	void stop()
+	{
+		if (headingController != null) headingController.disable();
+
+		steeringAssistMode = false;
+	}
+
+	// Tank drive through Talon velocity control when closed loop drive is enabled,
+	// otherwise open loop.
+
+	private void tankDrive(double left, double right)
+	{
+		tracer.markAll(LatencyTracer.DECIDE);
+
+		if (closedLoopDrive != null)
+			closedLoopDrive.tankDrive(left, right, true);
+		else
+			Hardware.drive.tankDrive(left, right, true);
+
+		tracer.markAll(LatencyTracer.DRIVE);
+	}
+
+	// True if the sticks are within percent of full scale of each other.
+
+	static boolean leftRightEqual(double left, double right, double percent)
+	{
+		//if (left == right) return true;
+
+		if (Math.abs(left - right) <= (1 * (percent / 100))) return true;
+
+		return false;
+	}
+}
@@ -0,0 +1,109 @@
+package Team4450.Robot11;
+
+/**
+ * Deterministic clock for tests and the simulator. Time starts at a fixed time
+ * (not 0, which robot code uses for not set) and only moves when the driving
+ * thread (the thread that created the clock) sleeps or calls advance(). A sleep
+ * returns at once with time moved forward exactly the time asked for. So a ControlLoop run on this clock ticks exactly on its
+ * deadlines and 150 seconds of teleop take only as long as the tick code does.
+ *
+ * Other threads that sleep wait until the driving thread has moved time past
+ * their wake up time. A step listener can be set to run on the driving thread
+ * at every step boundary time passes, which is where a simulator advances its
+ * physics, so the physics sees the same steps however the time is slept.
+ */
+
+public class VirtualClock implements Clock
+{
+	private final Thread	driver = Thread.currentThread();
+	private final long		stepUs;
+	private volatile long	timeUs;
+	private long			nextStepUs;
+	private Runnable		stepListener;
+
+	/**
+	 * @param startUs Starting time in microseconds.
+	 * @param stepUs Step listener period in microseconds.
+	 */
+
+	public VirtualClock(long startUs, long stepUs)
+	{
+		if (stepUs <= 0) throw new IllegalArgumentException("Step must be > 0");
+
+		this.stepUs = stepUs;
+
+		timeUs = startUs;
+		nextStepUs = startUs + stepUs;
+	}
+
+	// Clock starting at 1 second with 1ms steps.
+
+	public VirtualClock()
+	{
+		this(1000000, 1000);
+	}
+
+	// Set code to run each step, such as a physics update. Null for none.
+
+	public void setStepListener(Runnable listener)
+	{
+		stepListener = listener;
+	}
+
+	public long getStepUs()
+	{
+		return stepUs;
+	}
+
+	public long getTimeUs()
+	{
+		return timeUs;
+	}
+
+	public void sleepUs(long us)
+	{
+		if (Thread.currentThread() == driver)
+			advance(us);
+		else
+			waitUntil(timeUs + us);
+	}
+
+	/**
+	 * Move time forward, running the step listener at each step boundary passed.
+	 * Driving thread only.
+	 * @param us Time to add in microseconds.
+	 */
+
+	public void advance(long us)
+	{
+		long	endUs = timeUs + Math.max(0, us);
+
+		if (Thread.currentThread() != driver) throw new IllegalStateException("Not the clock's driving thread");
+
+		while (nextStepUs <= endUs)
+		{
+			timeUs = nextStepUs;
+			nextStepUs += stepUs;
+
+			if (stepListener != null) stepListener.run();
+		}
+
+		timeUs = endUs;
+
+		synchronized (this)
+		{
+			notifyAll();
+		}
+	}
+
+	// Wait for the driving thread to move time to wakeUs.
+
+	private synchronized void waitUntil(long wakeUs)
+	{
+		try
+		{
+			while (timeUs < wakeUs) wait();
+		}
+		catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+	}
+}
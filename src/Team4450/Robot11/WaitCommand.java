@@ -0,0 +1,26 @@
+package Team4450.Robot11;
+
+// Command that does nothing for a set time.
+
+public class WaitCommand extends Command
+{
+	private final long	durationUs;
+	private long		endUs;
+
+	public WaitCommand(double seconds)
+	{
+		super("Wait " + seconds);
+
+		durationUs = (long) (seconds * 1000000);
+	}
+
+	protected void initialize()
+	{
+		endUs = Hardware.getTime() + durationUs;
+	}
+
+	protected boolean isFinished()
+	{
+		return Hardware.getTime() >= endUs;
+	}
+}